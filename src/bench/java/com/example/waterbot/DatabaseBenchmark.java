@@ -0,0 +1,182 @@
+package com.example.waterbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции с БД на пути обработки апдейта, на временном файле SQLite с заполненными таблицами.
+ * <p>
+ * isCallbackSpam и getMediaFileId из исходного кода больше не ходят в SQLite: антиспам живёт
+ * в FloodGuard, file_id — в MediaCache, поэтому меряются они (вместе с записью нажатия).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final String[] CALLBACKS = {
+            "MENU_1_WATER_FACTS", "MENU_2_46_REASONS", "MENU_3_DEHYDRATION", "MENU_4_QUALITY_FULL",
+            "MENU_5_LIVE_WATER", "MENU_6_PROMO", "MENU_8_HEALTH_FORM", "MENU_9_CONSULTATION", "BACK_TO_MENU"
+    };
+    private static final int MEDIA_FILES = 60;
+    private static final int CALLBACKS_PER_USER = 20;
+
+    @Param({"10000", "100000"})
+    public int users;
+
+    private Path dir;
+    private Database db;
+    private MediaCache mediaCache;
+    private FloodGuard floodGuard;
+    private String[] mediaKeys;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        dir = Files.createTempDirectory("waterbot-bench");
+        String file = dir.resolve("bench.db").toString();
+        // большая очередь отложенных записей: бенчмарк меряет постановку, а не сброс на переполнении
+        db = new Database(file, 4, 1_000_000, 500, 200L);
+        fill(file);
+        mediaCache = new MediaCache(db);
+        floodGuard = new FloodGuard(2000);
+    }
+
+    /**
+     * Пользователи, журнал нажатий и media_cache отдельным соединением (схему уже создал Database).
+     */
+    private void fill(String file) throws SQLException {
+        long now = System.currentTimeMillis();
+        mediaKeys = new String[MEDIA_FILES];
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO users (chat_id, username, first_start_at, last_start_at, is_blocked) VALUES (?, ?, ?, ?, 0)")) {
+                for (int i = 0; i < users; i++) {
+                    ps.setLong(1, chatId(i));
+                    ps.setString(2, "user" + i);
+                    ps.setLong(3, now - 86_400_000L);
+                    ps.setLong(4, now - 3_600_000L);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO callback_log (chat_id, callback_data, created_at) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < users * CALLBACKS_PER_USER; i++) {
+                    ps.setLong(1, chatId(i % users));
+                    ps.setString(2, CALLBACKS[i % CALLBACKS.length]);
+                    ps.setLong(3, now - i);
+                    ps.addBatch();
+                    if (i % 10_000 == 9_999) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO media_cache (media_key, file_id) VALUES (?, ?)")) {
+                for (int i = 0; i < MEDIA_FILES; i++) {
+                    mediaKeys[i] = "photo:sha256:" + String.format("%064x", i);
+                    ps.setString(1, mediaKeys[i]);
+                    ps.setString(2, "AgACAgIAAxkDAAI" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static long chatId(int i) {
+        return 100_000_000L + i;
+    }
+
+    private long randomChat() {
+        return chatId(ThreadLocalRandom.current().nextInt(users));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        try (var files = Files.list(dir)) {
+            for (Path f : files.toList()) {
+                Files.deleteIfExists(f);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * Синхронный upsert /start: ожидание потока писателя плюс сам запрос.
+     */
+    @Benchmark
+    public Long saveStart() {
+        return db.saveStart(randomChat(), "user", System.currentTimeMillis());
+    }
+
+    /**
+     * Повторный /start пользователя из памяти: только постановка в write-behind.
+     */
+    @Benchmark
+    public void saveStartAsync() {
+        db.saveStartAsync(randomChat(), "user", System.currentTimeMillis());
+    }
+
+    /**
+     * Путь нажатия кнопки до отправки: антиспам и запись нажатия.
+     */
+    @Benchmark
+    public boolean callbackPress() {
+        long chatId = randomChat();
+        long now = System.currentTimeMillis();
+        String data = CALLBACKS[ThreadLocalRandom.current().nextInt(CALLBACKS.length)];
+        boolean allowed = floodGuard.tryAcquire(chatId, data, 1, 2000, now);
+        if (allowed) {
+            db.saveCallbackUsage(chatId, data, now);
+        }
+        return allowed;
+    }
+
+    @Benchmark
+    public void saveCallbackUsage() {
+        db.saveCallbackUsage(randomChat(), CALLBACKS[0], System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public String mediaFileId() {
+        return mediaCache.get(mediaKeys[ThreadLocalRandom.current().nextInt(MEDIA_FILES)]);
+    }
+
+    /**
+     * Загрузка media_cache при старте.
+     */
+    @Benchmark
+    public Map<String, String> loadMediaFileIds() {
+        return db.loadMediaFileIds();
+    }
+}
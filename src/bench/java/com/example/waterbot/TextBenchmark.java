@@ -0,0 +1,83 @@
+package com.example.waterbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подготовка текстов: разбиение на сообщения/подписи, вставка ссылок, сборка клавиатуры, компиляция плана.
+ * Тексты — настоящие, из media/texts (запуск из корня проекта).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmark {
+
+    private String longText;
+    private String caption;
+    private List<List<Sections.Button>> menu;
+
+    @Setup
+    public void setup() throws IOException {
+        Path texts = Path.of(Config.env("MEDIA_DIR", "media"), "texts");
+        // самый длинный текст раздела (~10 КБ) — несколько сообщений
+        longText = Files.readString(texts.resolve("reasons_46_text.html"), StandardCharsets.UTF_8);
+        // подпись к фото, которая не влезает в 1024 символа
+        caption = Files.readString(texts.resolve("live_water_coral_main_text.html"), StandardCharsets.UTF_8);
+
+        menu = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            menu.add(List.of(new Sections.Button("💧 Раздел " + i, "MENU_" + i, null)));
+        }
+        menu.add(List.of(new Sections.Button("Мой TELEGRAM канал", null, "https://t.me/+WKM0rsm0G9RkOTMy")));
+    }
+
+    @Benchmark
+    public List<String> splitLongText() {
+        return SectionPlan.split(longText, SectionPlan.MAX_MESSAGE_LENGTH);
+    }
+
+    @Benchmark
+    public String[] splitCaption() {
+        return SectionPlan.splitCaption(caption);
+    }
+
+    @Benchmark
+    public String linkify() {
+        return Sections.linkify(caption, "вода",
+                "https://ru.coral.club/shop/koral-mayn-silver.html?offer=2200&REF_CODE=365272872010");
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup keyboard() {
+        return Sections.keyboard("menu", menu);
+    }
+
+    @Benchmark
+    public SectionPlan compilePlan() {
+        return SectionPlan.builder("bench")
+                .photo("16.jpg", caption, null)
+                .text(longText, null)
+                .albums(true)
+                .build();
+    }
+}
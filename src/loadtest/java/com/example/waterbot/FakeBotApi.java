@@ -0,0 +1,347 @@
+package com.example.waterbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Заглушка Telegram Bot API для нагрузочного теста.
+ * <p>
+ * Понимает запросы вида /bot&lt;token&gt;/&lt;method&gt; так, как их шлёт telegrambots:
+ * getUpdates (long polling из очереди, которую наполняет генератор), sendMessage, sendPhoto, sendVideo,
+ * sendMediaGroup, answerCallbackQuery; остальное (deleteWebhook, getMe...) отвечает true.
+ * Загрузки получают новые file_id. На отправки добавляется задержка, часть из них
+ * получает 429 с retry_after или 500 — как при перегрузке настоящего API.
+ */
+public class FakeBotApi implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FakeBotApi.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int MAX_UPDATES = 100;
+
+    /**
+     * Куда сообщать об ответах бота: чат, метод (в нижнем регистре) и успешен ли запрос.
+     */
+    public interface Listener {
+        void onRequest(long chatId, String method, boolean ok);
+    }
+
+    /**
+     * @param latencyMs   базовая задержка ответа на отправку
+     * @param jitterMs    случайная добавка к задержке, 0..jitterMs
+     * @param rate429     доля отправок, получающих 429
+     * @param retryAfter  retry_after в ответе 429, секунды
+     * @param errorRate   доля отправок, получающих 500
+     */
+    public record Faults(long latencyMs, long jitterMs, double rate429, int retryAfter, double errorRate) {
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Faults faults;
+    private final Listener listener;
+    private final BlockingQueue<JsonNode> updates = new LinkedBlockingQueue<>();
+    private final CountDownLatch polled = new CountDownLatch(1);
+    private final AtomicLong nextUpdateId = new AtomicLong(1);
+    private final AtomicLong nextMessageId = new AtomicLong(1);
+    private final AtomicLong nextFileId = new AtomicLong(1);
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder injected429 = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    public FakeBotApi(int port, Faults faults, Listener listener) throws IOException {
+        this.faults = faults;
+        this.listener = listener;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        // на каждый запрос — свой поток: задержки и long polling не должны занимать соседей
+        ExecutorService virtual = UpdateDispatcher.newVirtualThreadExecutor();
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(OutboundQueue.namedThreads("fake-api"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake Bot API listening on {}", baseUrl());
+    }
+
+    /**
+     * Значение для BOT_API_URL бота.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/bot";
+    }
+
+    /**
+     * Дождаться первого getUpdates, то есть запуска бота.
+     */
+    public boolean awaitPolling(long timeout, TimeUnit unit) throws InterruptedException {
+        return polled.await(timeout, unit);
+    }
+
+    public void sendText(long chatId, String text) {
+        ObjectNode message = message(chatId);
+        message.set("from", user(chatId));
+        message.put("text", text);
+        if (text.startsWith("/")) {
+            ObjectNode entity = message.putArray("entities").addObject();
+            entity.put("type", "bot_command");
+            entity.put("offset", 0);
+            entity.put("length", text.length());
+        }
+        ObjectNode update = JSON.createObjectNode();
+        update.put("update_id", nextUpdateId.getAndIncrement());
+        update.set("message", message);
+        updates.add(update);
+    }
+
+    public void pressButton(long chatId, String data) {
+        long updateId = nextUpdateId.getAndIncrement();
+        ObjectNode query = JSON.createObjectNode();
+        query.put("id", "cb" + updateId);
+        query.set("from", user(chatId));
+        query.put("chat_instance", Long.toString(chatId));
+        query.put("data", data);
+        query.set("message", message(chatId));
+        ObjectNode update = JSON.createObjectNode();
+        update.put("update_id", updateId);
+        update.set("callback_query", query);
+        updates.add(update);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            requests.computeIfAbsent(method, m -> new LongAdder()).increment();
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            Request request = Request.parse(contentType, body);
+
+            switch (method) {
+                case "getupdates" -> reply(exchange, 200, ok(getUpdates(request)));
+                case "sendmessage", "sendphoto", "sendvideo", "sendmediagroup", "answercallbackquery" ->
+                        send(exchange, method, request);
+                default -> reply(exchange, 200, ok(JSON.getNodeFactory().booleanNode(true)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Fake Bot API: request failed", e);
+        }
+    }
+
+    private ArrayNode getUpdates(Request request) throws InterruptedException {
+        polled.countDown();
+        long timeout = Math.max(0, request.longField("timeout", 0));
+        List<JsonNode> batch = new ArrayList<>();
+        JsonNode first = updates.poll(timeout, TimeUnit.SECONDS);
+        if (first != null) {
+            batch.add(first);
+            updates.drainTo(batch, MAX_UPDATES - 1);
+        }
+        ArrayNode result = JSON.createArrayNode();
+        batch.forEach(result::add);
+        return result;
+    }
+
+    private void send(HttpExchange exchange, String method, Request request)
+            throws IOException, InterruptedException {
+        long chatId = request.longField("chat_id", 0);
+        long delay = faults.latencyMs() + (faults.jitterMs() > 0 ? ThreadLocalRandom.current().nextLong(faults.jitterMs() + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < faults.rate429()) {
+            injected429.increment();
+            ObjectNode error = error(429, "Too Many Requests: retry after " + faults.retryAfter());
+            error.putObject("parameters").put("retry_after", faults.retryAfter());
+            reply(exchange, 429, error);
+            listener.onRequest(chatId, method, false);
+            return;
+        }
+        if (dice < faults.rate429() + faults.errorRate()) {
+            injectedErrors.increment();
+            reply(exchange, 500, error(500, "Internal Server Error"));
+            listener.onRequest(chatId, method, false);
+            return;
+        }
+
+        JsonNode result = switch (method) {
+            case "sendmessage" -> message(chatId).put("text", request.field("text"));
+            case "sendphoto" -> withMedia(message(chatId), "photo");
+            case "sendvideo" -> withMedia(message(chatId), "video");
+            case "sendmediagroup" -> mediaGroup(chatId, request.field("media"));
+            default -> JSON.getNodeFactory().booleanNode(true);
+        };
+        reply(exchange, 200, ok(result));
+        listener.onRequest(chatId, method, true);
+    }
+
+    private ArrayNode mediaGroup(long chatId, String media) throws IOException {
+        ArrayNode result = JSON.createArrayNode();
+        for (JsonNode item : JSON.readTree(media == null ? "[]" : media)) {
+            result.add(withMedia(message(chatId), item.path("type").asText("photo")));
+        }
+        return result;
+    }
+
+    private ObjectNode withMedia(ObjectNode message, String type) {
+        String fileId = "fake-" + type + "-" + nextFileId.getAndIncrement();
+        if ("video".equals(type)) {
+            ObjectNode video = message.putObject("video");
+            video.put("file_id", fileId);
+            video.put("file_unique_id", fileId);
+            video.put("width", 1280);
+            video.put("height", 720);
+            video.put("duration", 30);
+        } else {
+            ObjectNode size = message.putArray("photo").addObject();
+            size.put("file_id", fileId);
+            size.put("file_unique_id", fileId);
+            size.put("width", 1280);
+            size.put("height", 960);
+        }
+        return message;
+    }
+
+    private ObjectNode message(long chatId) {
+        ObjectNode message = JSON.createObjectNode();
+        message.put("message_id", nextMessageId.getAndIncrement());
+        message.put("date", System.currentTimeMillis() / 1000);
+        ObjectNode chat = message.putObject("chat");
+        chat.put("id", chatId);
+        chat.put("type", "private");
+        return message;
+    }
+
+    private static ObjectNode user(long chatId) {
+        ObjectNode user = JSON.createObjectNode();
+        user.put("id", chatId);
+        user.put("is_bot", false);
+        user.put("first_name", "Load");
+        user.put("username", "load" + chatId);
+        return user;
+    }
+
+    private static ObjectNode ok(JsonNode result) {
+        ObjectNode node = JSON.createObjectNode();
+        node.put("ok", true);
+        node.set("result", result);
+        return node;
+    }
+
+    private static ObjectNode error(int code, String description) {
+        ObjectNode node = JSON.createObjectNode();
+        node.put("ok", false);
+        node.put("error_code", code);
+        node.put("description", description);
+        return node;
+    }
+
+    private static void reply(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((method, count) -> counts.put(method, count.sum()));
+        return counts;
+    }
+
+    public long injected429() {
+        return injected429.sum();
+    }
+
+    public long injectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Поля запроса: JSON-тело (BotApiMethod) или multipart/form-data (отправка файлов).
+     */
+    private record Request(JsonNode json, String multipart) {
+
+        // значение текстового поля multipart: заголовки части, пустая строка, значение до границы
+        private static final String FIELD = "Content-Disposition: form-data; name=\"%s\"\r\n(?:[^\r\n]+\r\n)*\r\n(.*?)\r\n--";
+
+        static Request parse(String contentType, byte[] body) {
+            if (contentType != null && contentType.startsWith("multipart/")) {
+                // ISO-8859-1 сохраняет байты один к одному: двоичные части файлов не мешают поиску полей
+                return new Request(null, new String(body, StandardCharsets.ISO_8859_1));
+            }
+            if (body.length == 0) {
+                return new Request(JSON.createObjectNode(), null);
+            }
+            try {
+                return new Request(JSON.readTree(body), null);
+            } catch (IOException e) {
+                return new Request(JSON.createObjectNode(), null);
+            }
+        }
+
+        String field(String name) {
+            if (json != null) {
+                JsonNode value = json.get(name);
+                return value == null ? null : value.isTextual() ? value.asText() : value.toString();
+            }
+            Matcher m = Pattern.compile(String.format(FIELD, Pattern.quote(name)), Pattern.DOTALL).matcher(multipart);
+            return m.find() ? new String(m.group(1).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : null;
+        }
+
+        long longField(String name, long defaultValue) {
+            String value = field(name);
+            try {
+                return value == null ? defaultValue : Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+    }
+}
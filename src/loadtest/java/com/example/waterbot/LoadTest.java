@@ -0,0 +1,389 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сквозной нагрузочный тест: заглушка Bot API, генератор чатов и отчёт.
+ * <p>
+ * Каждый из LOADTEST_CHATS чатов (старты растянуты на LOADTEST_RAMP_SEC) шлёт /start, затем
+ * LOADTEST_PRESSES раз нажимает случайную кнопку меню; следующее действие — через LOADTEST_THINK_MS
+ * после того, как раздел пришёл целиком. Сколько сообщений должно прийти, считается по тем же планам
+ * и индексу медиа, что у бота (шаги с отсутствующими файлами бот пропускает).
+ * <p>
+ * По умолчанию бот запускается дочерним процессом с BOT_API_URL на заглушку и временной БД;
+ * остальные переменные окружения (RATE_*, OUTBOUND_THREADS, UPDATE_DISPATCH_MODE...) он наследует.
+ * Лимиты Telegram по умолчанию ограничат пропускную способность ~30 сообщениями/с — чтобы найти
+ * предел самого бота, поднимите RATE_GLOBAL_PER_SEC. Запуск: mvn -B -Ploadtest compile exec:exec
+ * <p>
+ * LOADTEST_BROADCAST_CHATS &gt; 0 — те же диалоги на фоне рассылки: в БД бота заранее записывается столько
+ * пользователей, администратор запускает /broadcast раздела LOADTEST_BROADCAST_SECTION (по умолчанию стартового),
+ * и через LOADTEST_BROADCAST_LEAD_SEC начинаются диалоги. Задержки в отчёте — это задержки диалогов
+ * во время рассылки; сравните с прогоном без неё. Id получателей рассылки меньше id диалогов, так что
+ * пользователей должно хватить на весь прогон — иначе рассылка дойдёт до диалогов и испортит их счёт.
+ */
+public class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final long FIRST_CHAT_ID = 1_000_000_000L;
+    // получатели рассылки — ниже диалогов: рассылка идёт по возрастанию chat_id
+    private static final long FIRST_BROADCAST_CHAT_ID = 500_000_000L;
+    private static final long ADMIN_CHAT_ID = 42L;
+
+    private final Sections sections;
+    private final MediaIndex media;
+    private final List<String> callbacks;
+    private final int presses;
+    private final long thinkMs;
+    private final long sectionTimeoutMs;
+    private final ScheduledThreadPoolExecutor scheduler =
+            new ScheduledThreadPoolExecutor(2, OutboundQueue.namedThreads("loadtest"));
+    private final Map<Long, Chat> chats = new ConcurrentHashMap<>();
+    private FakeBotApi api;
+    private CountDownLatch finished;
+
+    private final Metrics.Histogram firstMessage = new Metrics.Histogram();
+    private final Metrics.Histogram sectionTime = new Metrics.Histogram();
+    private final LongAdder sectionsDone = new LongAdder();
+    private final LongAdder sectionsTimedOut = new LongAdder();
+    private final LongAdder updatesSent = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder unexpectedMessages = new LongAdder();
+    private final LongAdder broadcastMessages = new LongAdder();
+    private final AtomicLong firstBroadcastAt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastBroadcastAt = new AtomicLong();
+    private final AtomicLong firstMessageAt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastMessageAt = new AtomicLong();
+
+    LoadTest(SectionCatalog catalog, int presses, long thinkMs, long sectionTimeoutMs) {
+        this.sections = catalog.sections();
+        this.media = catalog.media();
+        this.presses = presses;
+        this.thinkMs = thinkMs;
+        this.sectionTimeoutMs = sectionTimeoutMs;
+        // разделы, от которых не дойдёт ни одного сообщения, завершение не покажут — не нажимаем
+        this.callbacks = new ArrayList<>();
+        for (String data : sections.callbacks()) {
+            if (expectedMessages(sections.byCallback(data)) > 0) {
+                callbacks.add(data);
+            }
+        }
+        callbacks.sort(null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mediaDir = Config.env("MEDIA_DIR", "media");
+        int port = (int) Config.envLong("LOADTEST_PORT", 8081L);
+        int chatCount = (int) Config.envLong("LOADTEST_CHATS", 1000L);
+        int presses = (int) Config.envLong("LOADTEST_PRESSES", 3L);
+        long rampSec = Config.envLong("LOADTEST_RAMP_SEC", 30L);
+        long thinkMs = Config.envLong("LOADTEST_THINK_MS", 2500L);
+        long sectionTimeoutSec = Config.envLong("LOADTEST_SECTION_TIMEOUT_SEC", 300L);
+        long timeoutSec = Config.envLong("LOADTEST_TIMEOUT_SEC", 3600L);
+        boolean spawnBot = Config.envLong("LOADTEST_SPAWN_BOT", 1L) != 0;
+        int broadcastChats = (int) Config.envLong("LOADTEST_BROADCAST_CHATS", 0L);
+        long broadcastLeadSec = Config.envLong("LOADTEST_BROADCAST_LEAD_SEC", 5L);
+        FakeBotApi.Faults faults = new FakeBotApi.Faults(
+                Config.envLong("LOADTEST_LATENCY_MS", 50L),
+                Config.envLong("LOADTEST_JITTER_MS", 50L),
+                Config.envLong("LOADTEST_429_PERMILLE", 0L) / 1000.0,
+                (int) Config.envLong("LOADTEST_RETRY_AFTER_SEC", 1L),
+                Config.envLong("LOADTEST_ERROR_PERMILLE", 0L) / 1000.0);
+
+        SectionCatalog catalog = new SectionCatalog(mediaDir, Runtime.getRuntime().availableProcessors());
+        LoadTest test = new LoadTest(catalog, presses, thinkMs, TimeUnit.SECONDS.toMillis(sectionTimeoutSec));
+        Path workDir = Files.createTempDirectory("waterbot-loadtest");
+        Process bot = null;
+        try (FakeBotApi api = new FakeBotApi(port, faults, test::onRequest)) {
+            test.api = api;
+            api.start();
+            if (spawnBot) {
+                if (broadcastChats > 0) {
+                    seedUsers(workDir, broadcastChats);
+                }
+                bot = spawnBot(api.baseUrl(), mediaDir, workDir);
+            } else {
+                log.info("LOADTEST_SPAWN_BOT=0: start the bot with BOT_API_URL={}", api.baseUrl());
+            }
+            if (!api.awaitPolling(120, TimeUnit.SECONDS)) {
+                log.error("The bot did not start polling within 120 s");
+                return;
+            }
+
+            log.info("Load test: {} chats, {} presses each, ramp {} s, faults {}", chatCount, presses, rampSec, faults);
+            if (broadcastChats > 0) {
+                String section = Config.env("LOADTEST_BROADCAST_SECTION", catalog.sections().start().id());
+                log.info("Broadcasting {} to {} chats, dialogs start in {} s", section, broadcastChats, broadcastLeadSec);
+                api.sendText(ADMIN_CHAT_ID, "/broadcast " + section);
+                TimeUnit.SECONDS.sleep(broadcastLeadSec);
+            }
+            long started = System.nanoTime();
+            boolean completed = test.run(chatCount, TimeUnit.SECONDS.toMillis(rampSec), timeoutSec);
+            test.report(System.nanoTime() - started, completed);
+        } finally {
+            test.scheduler.shutdownNow();
+            if (bot != null) {
+                bot.destroy();
+                bot.waitFor(30, TimeUnit.SECONDS);
+            }
+            catalog.close();
+            // БД и каталог журнала доставки; вложенное удаляется раньше содержащего
+            try (var files = Files.walk(workDir)) {
+                for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Получатели рассылки: пользователи, когда-то нажавшие /start.
+     */
+    private static void seedUsers(Path workDir, int count) {
+        try (Database db = new Database(workDir.resolve("loadtest.db").toString())) {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                db.saveStart(FIRST_BROADCAST_CHAT_ID + i, "broadcast" + i, now);
+            }
+        }
+        log.info("Seeded {} broadcast recipients", count);
+    }
+
+    /**
+     * Бот — отдельным процессом с тем же classpath, чтобы нагрузка шла через настоящий HTTP и старт.
+     */
+    private static Process spawnBot(String apiUrl, String mediaDir, Path workDir) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                WaterBotApplication.class.getName());
+        Map<String, String> env = pb.environment();
+        env.put("BOT_API_URL", apiUrl);
+        env.put("BOT_TOKEN", "loadtest");
+        env.put("DB_FILE", workDir.resolve("loadtest.db").toString());
+        env.put("MEDIA_DIR", mediaDir);
+        env.put("MEDIA_WARMUP_CHAT_ID", "0");
+        env.put("SECTIONS_HOT_RELOAD", "0");
+        env.put("UPDATE_MODE", "polling");
+        env.put("ADMIN_CHAT_ID", Long.toString(ADMIN_CHAT_ID));
+        File logFile = new File(Config.env("LOADTEST_BOT_LOG", "target/loadtest-bot.log"));
+        pb.redirectErrorStream(true).redirectOutput(logFile);
+        log.info("Starting the bot, log: {}", logFile.getAbsolutePath());
+        return pb.start();
+    }
+
+    boolean run(int chatCount, long rampMs, long timeoutSec) throws InterruptedException {
+        finished = new CountDownLatch(chatCount);
+        for (int i = 0; i < chatCount; i++) {
+            Chat chat = new Chat(FIRST_CHAT_ID + i, presses);
+            chats.put(chat.chatId, chat);
+            long delay = chatCount > 1 ? rampMs * i / (chatCount - 1) : 0;
+            scheduler.schedule(() -> start(chat), delay, TimeUnit.MILLISECONDS);
+        }
+        long started = System.nanoTime();
+        while (!finished.await(10, TimeUnit.SECONDS)) {
+            log.info("... {} chats left, {} sections done, {} timed out, {} messages",
+                    finished.getCount(), sectionsDone.sum(), sectionsTimedOut.sum(), messages.sum());
+            if (System.nanoTime() - started > TimeUnit.SECONDS.toNanos(timeoutSec)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void start(Chat chat) {
+        expect(chat, expectedMessages(sections.start()));
+        api.sendText(chat.chatId, "/start");
+    }
+
+    private void next(Chat chat) {
+        if (chat.pressesLeft == 0) {
+            finished.countDown();
+            return;
+        }
+        chat.pressesLeft--;
+        String data;
+        do {
+            data = callbacks.get(ThreadLocalRandom.current().nextInt(callbacks.size()));
+        } while (callbacks.size() > 1 && data.equals(chat.lastCallback));
+        // одна и та же кнопка подряд упёрлась бы в антиспам, а не в производительность
+        chat.lastCallback = data;
+        expect(chat, expectedMessages(sections.byCallback(data)));
+        api.pressButton(chat.chatId, data);
+    }
+
+    private void expect(Chat chat, int expected) {
+        synchronized (chat) {
+            Expectation e = new Expectation(System.nanoTime(), expected);
+            chat.current = e;
+            e.timeout = scheduler.schedule(() -> timeout(chat, e), sectionTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        updatesSent.increment();
+    }
+
+    private void timeout(Chat chat, Expectation e) {
+        synchronized (chat) {
+            if (chat.current != e) {
+                return;
+            }
+            chat.current = null;
+        }
+        sectionsTimedOut.increment();
+        scheduler.schedule(() -> next(chat), thinkMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ответ бота, полученный заглушкой.
+     */
+    void onRequest(long chatId, String method, boolean ok) {
+        if (!ok) {
+            failedRequests.increment();
+            return;
+        }
+        if ("answercallbackquery".equals(method)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (chatId == ADMIN_CHAT_ID) {
+            return;
+        }
+        if (chatId < FIRST_CHAT_ID) {
+            broadcastMessages.increment();
+            firstBroadcastAt.accumulateAndGet(now, Math::min);
+            lastBroadcastAt.accumulateAndGet(now, Math::max);
+            return;
+        }
+        messages.increment();
+        firstMessageAt.accumulateAndGet(now, Math::min);
+        lastMessageAt.accumulateAndGet(now, Math::max);
+
+        Chat chat = chats.get(chatId);
+        if (chat == null) {
+            unexpectedMessages.increment();
+            return;
+        }
+        Expectation done = null;
+        synchronized (chat) {
+            Expectation e = chat.current;
+            if (e == null) {
+                unexpectedMessages.increment();
+                return;
+            }
+            if (e.received++ == 0) {
+                firstMessage.record(now - e.startedNanos);
+            }
+            if (e.received >= e.expected) {
+                chat.current = null;
+                done = e;
+            }
+        }
+        if (done != null) {
+            done.timeout.cancel(false);
+            sectionTime.record(now - done.startedNanos);
+            sectionsDone.increment();
+            scheduler.schedule(() -> next(chat), thinkMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Сколько сообщений бот отправит по плану: шаги без файла пропускаются,
+     * альбом уходит одним запросом (или одиночным сообщением, если от него остался один элемент).
+     */
+    int expectedMessages(SectionPlan plan) {
+        int count = 0;
+        for (SectionPlan.Step step : plan.steps()) {
+            if (step instanceof SectionPlan.Album album) {
+                int present = 0;
+                for (SectionPlan.Step item : album.items()) {
+                    present += hasMedia(item) ? 1 : 0;
+                }
+                count += present > 0 ? 1 : 0;
+            } else if (step instanceof SectionPlan.Text || hasMedia(step)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean hasMedia(SectionPlan.Step step) {
+        if (step instanceof SectionPlan.Photo photo) {
+            return media.contentKey(MediaCache.photoKey(photo.fileName())) != null;
+        }
+        if (step instanceof SectionPlan.Video video) {
+            return media.contentKey(MediaCache.videoKey(video.fileName())) != null;
+        }
+        return false;
+    }
+
+    void report(long elapsedNanos, boolean completed) {
+        double seconds = elapsedNanos / 1e9;
+        long delivered = messages.sum();
+        long span = lastMessageAt.get() - firstMessageAt.get();
+        log.info("==== Load test report ({}) ====", completed ? "completed" : "timed out");
+        log.info("Duration: {} s, chats: {}, updates sent: {}", String.format("%.1f", seconds), chats.size(),
+                updatesSent.sum());
+        log.info("Sections: {} completed, {} timed out", sectionsDone.sum(), sectionsTimedOut.sum());
+        log.info("Messages delivered: {}, throughput: {} msg/s", delivered,
+                String.format("%.1f", span > 0 ? delivered / (span / 1e9) : 0.0));
+        log.info("Failed requests: {} (injected 429: {}, injected errors: {}), unexpected messages: {}",
+                failedRequests.sum(), api.injected429(), api.injectedErrors(), unexpectedMessages.sum());
+        log.info("API requests: {}", api.requestCounts());
+        long broadcast = broadcastMessages.sum();
+        if (broadcast > 0) {
+            long broadcastSpan = lastBroadcastAt.get() - firstBroadcastAt.get();
+            log.info("Broadcast messages: {}, throughput: {} msg/s", broadcast,
+                    String.format("%.1f", broadcastSpan > 0 ? broadcast / (broadcastSpan / 1e9) : 0.0));
+        }
+        log.info("Time to first message: {}", percentiles(firstMessage));
+        log.info("Section completion:    {}", percentiles(sectionTime));
+    }
+
+    private static String percentiles(Metrics.Histogram histogram) {
+        Metrics.Histogram.Snapshot s = histogram.snapshot();
+        return String.format("p50=%d ms, p90=%d ms, p99=%d ms, max=%d ms (n=%d)",
+                s.quantile(0.5) / 1_000_000, s.quantile(0.9) / 1_000_000, s.quantile(0.99) / 1_000_000,
+                s.quantile(1.0) / 1_000_000, s.count());
+    }
+
+    private static final class Chat {
+        final long chatId;
+        int pressesLeft;
+        String lastCallback;
+        Expectation current;
+
+        Chat(long chatId, int presses) {
+            this.chatId = chatId;
+            this.pressesLeft = presses;
+        }
+    }
+
+    private static final class Expectation {
+        final long startedNanos;
+        final int expected;
+        int received;
+        ScheduledFuture<?> timeout;
+
+        Expectation(long startedNanos, int expected) {
+            this.startedNanos = startedNanos;
+            this.expected = expected;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Рассылка раздела всем пользователям с возобновлением после перезапуска.
+ * <p>
+ * Пользователи читаются страницами по первичному ключу (keyset), вся таблица в память не грузится.
+ * Одновременно в очередях доставки не больше window чатов: их шаги идут через OutboundQueue,
+ * так что темп задаёт RateLimiter: рассылке достаётся только её часть общего лимита (RATE_BROADCAST_PER_SEC),
+ * остальное всегда свободно для диалогов.
+ * Прогресс — «все chat_id &lt;= X обработаны» — периодически пишется в таблицу broadcasts;
+ * после падения повторно получат сообщение не больше window чатов, бывших в полёте.
+ */
+public class Broadcast implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(Broadcast.class);
+
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // сколько ждать доставки чатов в полёте при остановке, прежде чем сохранить прогресс
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Доставка плана в чат; onDone вызывается, когда выполнен последний шаг.
+     */
+    @FunctionalInterface
+    public interface Delivery {
+        void deliver(long chatId, SectionPlan plan, Runnable onDone);
+    }
+
+    private final Database database;
+    private final SectionCatalog catalog;
+    private final Delivery delivery;
+    private final int window;
+    private final int pageSize;
+
+    private final LongAdder deliveredTotal = new LongAdder();
+    private volatile Run current;
+
+    public Broadcast(Database database, SectionCatalog catalog, Delivery delivery, int window, int pageSize) {
+        this.database = database;
+        this.catalog = catalog;
+        this.delivery = delivery;
+        this.window = Math.max(1, window);
+        this.pageSize = Math.max(1, pageSize);
+        Metrics.counter("waterbot_broadcast_delivered_total", "Chats a broadcast section was delivered to",
+                deliveredTotal::sum);
+        Metrics.gauge("waterbot_broadcast_remaining", "Chats left in the running broadcast", () -> {
+            Run run = current;
+            return run != null && run.isAlive() ? run.remaining() : 0;
+        });
+    }
+
+    /**
+     * Начать рассылку раздела.
+     *
+     * @return сообщение для администратора
+     */
+    public synchronized String start(String sectionId) {
+        Run run = current;
+        if (run != null && run.isAlive()) {
+            return run.isStopping()
+                    ? "Рассылка #" + run.record.id() + " ещё останавливается, повторите чуть позже"
+                    : "Уже идёт рассылка: " + run.describe();
+        }
+        if (catalog.sections().section(sectionId) == null) {
+            return "Нет раздела «" + sectionId + "»";
+        }
+        Database.BroadcastRecord record = database.createBroadcast(sectionId, System.currentTimeMillis());
+        if (record == null) {
+            return "Не удалось создать рассылку (ошибка БД)";
+        }
+        launch(record);
+        return "Рассылка #" + record.id() + " «" + sectionId + "» запущена: " + record.total() + " чатов";
+    }
+
+    /**
+     * Возобновить незавершённую рассылку (при старте бота или после паузы).
+     *
+     * @return сообщение для администратора
+     */
+    public synchronized String resume() {
+        Run run = current;
+        if (run != null && run.isAlive()) {
+            return run.isStopping()
+                    ? "Рассылка #" + run.record.id() + " ещё останавливается, повторите чуть позже"
+                    : "Рассылка уже идёт: " + run.describe();
+        }
+        Database.BroadcastRecord record = database.unfinishedBroadcast();
+        if (record == null) {
+            return "Незавершённых рассылок нет";
+        }
+        launch(record);
+        return "Рассылка #" + record.id() + " «" + record.section() + "» возобновлена с chat_id > "
+                + record.lastChatId();
+    }
+
+    /**
+     * Возобновить рассылку, если бот был остановлен посреди неё (но не поставленную на паузу вручную).
+     */
+    public synchronized void resumeInterrupted() {
+        Database.BroadcastRecord record = database.unfinishedBroadcast();
+        if (record != null && Database.BroadcastRecord.RUNNING.equals(record.status())) {
+            log.info("Resuming broadcast #{} ({}) after restart", record.id(), record.section());
+            launch(record);
+        }
+    }
+
+    /**
+     * Поставить текущую рассылку на паузу; продолжить можно через {@link #resume()}.
+     * Не ждёт: поток рассылки сам дождётся чатов в полёте и сохранит прогресс.
+     *
+     * @param onStopped итог для администратора — вызывается из потока рассылки после сохранения прогресса
+     * @return сообщение для администратора
+     */
+    public synchronized String pause(Consumer<String> onStopped) {
+        Run run = current;
+        if (run == null || !run.isAlive()) {
+            return "Рассылка не идёт";
+        }
+        if (run.isStopping()) {
+            return "Рассылка #" + run.record.id() + " уже останавливается";
+        }
+        run.requestStop(Database.BroadcastRecord.PAUSED, System.nanoTime() + DRAIN_TIMEOUT_NANOS, onStopped);
+        return "Рассылка #" + run.record.id() + " останавливается: ждём чаты в полёте…";
+    }
+
+    public String status() {
+        Run run = current;
+        if (run != null && run.isAlive()) {
+            return run.describe();
+        }
+        Database.BroadcastRecord record = database.unfinishedBroadcast();
+        return record == null
+                ? "Рассылка не идёт"
+                : "Рассылка #" + record.id() + " «" + record.section() + "» на паузе: "
+                + record.delivered() + "/" + record.total();
+    }
+
+    private void launch(Database.BroadcastRecord record) {
+        Run run = new Run(record);
+        current = run;
+        run.thread.start();
+    }
+
+    /**
+     * Остановить рассылку при завершении бота: прогресс сохраняется, после старта она продолжится.
+     */
+    @Override
+    public void close() {
+        close(System.nanoTime() + DRAIN_TIMEOUT_NANOS);
+    }
+
+    /**
+     * То же, но чаты в полёте ждём не дольше deadlineNanos (по System.nanoTime()) — при остановке процесса.
+     */
+    public void close(long deadlineNanos) {
+        Run run = current;
+        if (run != null && run.isAlive()) {
+            // при завершении процесса паузу, поставленную администратором, не перетираем
+            if (!run.isStopping()) {
+                run.requestStop(Database.BroadcastRecord.RUNNING, deadlineNanos, null);
+            }
+            run.await(deadlineNanos);
+        }
+    }
+
+    /**
+     * Один запуск рассылки в своём потоке.
+     */
+    private final class Run {
+        final Database.BroadcastRecord record;
+        final Thread thread;
+        final Semaphore slots = new Semaphore(window);
+        // чаты, чья доставка ещё идёт: всё, что меньше первого из них, уже обработано
+        final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+        final LongAdder delivered = new LongAdder();
+        final long startedNanos = System.nanoTime();
+        final long deliveredBefore;
+        volatile long dispatched;
+        volatile String stopStatus;
+        volatile long drainDeadline;
+        volatile Consumer<String> onStopped;
+
+        Run(Database.BroadcastRecord record) {
+            this.record = record;
+            this.deliveredBefore = record.delivered();
+            this.dispatched = record.lastChatId();
+            this.thread = OutboundQueue.namedThreads("broadcast-" + record.id()).newThread(this::loop);
+        }
+
+        boolean isAlive() {
+            return thread.isAlive();
+        }
+
+        boolean isStopping() {
+            return stopStatus != null;
+        }
+
+        /**
+         * Попросить поток рассылки остановиться; сам вызов не ждёт.
+         */
+        void requestStop(String status, long deadlineNanos, Consumer<String> report) {
+            drainDeadline = deadlineNanos;
+            onStopped = report;
+            // stopStatus последним: поток, увидевший его, увидит и срок, и получателя итога
+            stopStatus = status;
+            thread.interrupt();
+        }
+
+        /**
+         * Дождаться завершения потока — только при остановке бота.
+         */
+        void await(long deadlineNanos) {
+            try {
+                // плюс запас на последнюю запись прогресса
+                thread.join(TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadlineNanos - System.nanoTime())) + 5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void loop() {
+            log.info("Broadcast #{} ({}): {} chats, resuming after chat_id {}", record.id(), record.section(),
+                    record.total(), record.lastChatId());
+            long cursor = record.lastChatId();
+            long lastCheckpoint = System.nanoTime();
+            long lastLog = lastCheckpoint;
+            String status = Database.BroadcastRecord.DONE;
+            try {
+                while (true) {
+                    long[] page = database.userPage(cursor, pageSize);
+                    if (page.length == 0) {
+                        break;
+                    }
+                    // разделы могли перезагрузиться — берём актуальную версию на каждую страницу
+                    SectionPlan plan = catalog.sections().section(record.section());
+                    if (plan == null) {
+                        log.error("Broadcast #{}: section {} disappeared, pausing", record.id(), record.section());
+                        status = Database.BroadcastRecord.PAUSED;
+                        break;
+                    }
+                    for (long chatId : page) {
+                        slots.acquire();
+                        inFlight.add(chatId);
+                        dispatched = chatId;
+                        delivery.deliver(chatId, plan, () -> {
+                            inFlight.remove(chatId);
+                            delivered.increment();
+                            deliveredTotal.increment();
+                            slots.release();
+                        });
+
+                        long now = System.nanoTime();
+                        if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+                            checkpoint(Database.BroadcastRecord.RUNNING, null);
+                            lastCheckpoint = now;
+                        }
+                        if (now - lastLog >= PROGRESS_LOG_INTERVAL_NANOS) {
+                            log.info("Broadcast {}", describe());
+                            lastLog = now;
+                        }
+                    }
+                    cursor = page[page.length - 1];
+                }
+                // всё поставлено в очереди — ждём, пока уйдут последние чаты
+                slots.acquire(window);
+                slots.release(window);
+            } catch (InterruptedException e) {
+                status = stopStatus != null ? stopStatus : Database.BroadcastRecord.RUNNING;
+                drain(stopStatus != null ? drainDeadline : System.nanoTime() + DRAIN_TIMEOUT_NANOS);
+            } catch (RuntimeException e) {
+                log.error("Broadcast #{} failed, pausing", record.id(), e);
+                status = Database.BroadcastRecord.PAUSED;
+                drain(System.nanoTime() + DRAIN_TIMEOUT_NANOS);
+            }
+            boolean done = Database.BroadcastRecord.DONE.equals(status);
+            checkpoint(status, done ? System.currentTimeMillis() : null);
+            log.info("Broadcast #{} {}: {}", record.id(), status, describe());
+            Consumer<String> report = onStopped;
+            if (report != null) {
+                report.accept(done
+                        ? "Рассылка завершилась раньше, чем встала на паузу: " + describe()
+                        : "Рассылка на паузе: " + describe() + "; продолжится с chat_id > " + safePoint());
+            }
+        }
+
+        /**
+         * Дать уже поставленным в очереди чатам дойти, чтобы точка возобновления ушла как можно дальше.
+         */
+        private void drain(long deadlineNanos) {
+            try {
+                if (slots.tryAcquire(window, Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    slots.release(window);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void checkpoint(String status, Long finishedAt) {
+            database.checkpointBroadcast(record.id(), status, safePoint(), deliveredBefore + delivered.sum(),
+                    finishedAt);
+        }
+
+        /**
+         * Наибольший chat_id, до которого включительно все чаты обработаны.
+         */
+        private long safePoint() {
+            long dispatchedNow = dispatched;
+            Long first = inFlight.isEmpty() ? null : inFlight.first();
+            return first != null ? first - 1 : dispatchedNow;
+        }
+
+        long remaining() {
+            return Math.max(0, record.total() - deliveredBefore - delivered.sum());
+        }
+
+        String describe() {
+            long done = deliveredBefore + delivered.sum();
+            double seconds = (System.nanoTime() - startedNanos) / 1e9;
+            double rate = seconds > 0 ? delivered.sum() / seconds : 0;
+            long remaining = remaining();
+            String eta = rate > 0 ? formatDuration((long) (remaining / rate)) : "—";
+            double percent = record.total() > 0 ? 100.0 * done / record.total() : 100.0;
+            return String.format(Locale.ROOT, "#%d «%s»: %d/%d (%.1f%%), %.1f чатов/с, осталось ~%s",
+                    record.id(), record.section(), done, record.total(), percent, rate, eta);
+        }
+    }
+
+    private static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format(Locale.ROOT, "%d ч %02d мин", seconds / 3600, seconds % 3600 / 60);
+        }
+        if (seconds >= 60) {
+            return String.format(Locale.ROOT, "%d мин %02d с", seconds / 60, seconds % 60);
+        }
+        return seconds + " с";
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обслуживание callback_log: сворачивает новые строки в суточные агрегаты
+ * (callback_daily, callback_daily_totals) и удаляет сырые строки старше окна хранения.
+ * <p>
+ * Работа режется на небольшие порции, каждая — отдельная задача писателя,
+ * так что между ними проходят обычные записи бота.
+ */
+public class CallbackLogRetention implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(CallbackLogRetention.class);
+
+    // короткая пауза между порциями, чтобы не занимать писателя подряд
+    private static final long PAUSE_BETWEEN_BATCHES_MS = 20L;
+
+    private final Database database;
+    private final long retentionMillis;
+    private final int batchSize;
+
+    public CallbackLogRetention(Database database, long retentionDays, int batchSize) {
+        this.database = database;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(1L, retentionDays));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void run() {
+        try {
+            long rolled = 0;
+            int n;
+            while ((n = database.rollupCallbackLog(batchSize)) > 0) {
+                rolled += n;
+                pause();
+            }
+
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            long purged = 0;
+            while ((n = database.purgeCallbackLog(cutoff, batchSize)) > 0) {
+                purged += n;
+                pause();
+            }
+
+            if (rolled > 0 || purged > 0) {
+                log.info("callback_log retention: rolled up {} rows, purged {} rows", rolled, purged);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("callback_log retention failed", e);
+        }
+    }
+
+    private static void pause() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(PAUSE_BETWEEN_BATCHES_MS);
+    }
+}
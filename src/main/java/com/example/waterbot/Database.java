@@ -4,53 +4,255 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Доступ к SQLite на долгоживущих соединениях.
+ * <p>
+ * База работает в WAL: читатели не мешают писателю. Чтения идут через небольшой пул соединений,
+ * все записи — через одного выделенного писателя (отдельный поток со своим соединением),
+ * так что SQLite никогда не получает конкурирующих транзакций на запись.
+ * PreparedStatement кэшируются на каждом соединении.
+ */
 public class Database implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(Database.class);
 
+    // upsert /start: RETURNING отдаёт старое last_start_at, сохранённое в prev_start_at.
+    // Раз пользователь пишет боту, он его не блокирует — is_blocked сбрасывается
+    private static final String UPSERT_START = """
+        INSERT INTO users (chat_id, username, first_start_at, last_start_at, is_blocked)
+        VALUES (?, ?, ?, ?, 0)
+        ON CONFLICT(chat_id) DO UPDATE SET
+            username = excluded.username,
+            prev_start_at = users.last_start_at,
+            last_start_at = excluded.last_start_at,
+            is_blocked = 0
+        RETURNING prev_start_at
+    """;
+
+    // тот же upsert для пакетной записи: отложенная запись не должна затирать более свежий /start
+    private static final String UPSERT_START_BATCH = """
+        INSERT INTO users (chat_id, username, first_start_at, last_start_at, is_blocked)
+        VALUES (?, ?, ?, ?, 0)
+        ON CONFLICT(chat_id) DO UPDATE SET
+            username = excluded.username,
+            prev_start_at = users.last_start_at,
+            last_start_at = excluded.last_start_at,
+            is_blocked = 0
+        WHERE excluded.last_start_at >= COALESCE(users.last_start_at, 0)
+    """;
+
+    private static final String ROLLUP_WATERMARK = "callback_log.rolled_up_id";
+    private static final String UPDATE_OFFSET = "updates.offset";
+    private static final String UPDATE_SAVED_AT = "updates.saved_at";
+
+    // сутки считаем в UTC: created_at / 86400000
+    private static final String ROLLUP_DAILY = """
+        INSERT INTO callback_daily (day, callback_data, chat_id, presses)
+        SELECT created_at / 86400000, callback_data, chat_id, COUNT(*)
+        FROM callback_log
+        WHERE id > ? AND id <= ?
+        GROUP BY 1, 2, 3
+        ON CONFLICT(day, callback_data, chat_id) DO UPDATE SET presses = presses + excluded.presses
+    """;
+
+    private static final String ROLLUP_TOTALS = """
+        INSERT INTO callback_daily_totals (day, callback_data, presses)
+        SELECT created_at / 86400000, callback_data, COUNT(*)
+        FROM callback_log
+        WHERE id > ? AND id <= ?
+        GROUP BY 1, 2
+        ON CONFLICT(day, callback_data) DO UPDATE SET presses = presses + excluded.presses
+    """;
+
+    // удаляем только уже свёрнутые строки, небольшими порциями по первичному ключу
+    private static final String PURGE_CALLBACK_LOG = """
+        DELETE FROM callback_log
+        WHERE id IN (
+            SELECT id FROM callback_log
+            WHERE id <= ? AND created_at < ?
+            ORDER BY id
+            LIMIT ?
+        )
+    """;
+
+    // keyset-пагинация по chat_id: страница — короткий range scan по idx_users_active, без OFFSET
+    // и без загрузки таблицы; заблокировавших бота в индексе нет
+    private static final String USER_PAGE =
+            "SELECT chat_id FROM users WHERE chat_id > ? AND is_blocked = 0 ORDER BY chat_id LIMIT ?";
+
+    private static final String SET_BLOCKED = "UPDATE users SET is_blocked = ? WHERE chat_id = ?";
+
+    private static final String INSERT_CALLBACK =
+            "INSERT INTO callback_log (chat_id, callback_data, created_at) VALUES (?, ?, ?)";
+
+    // время запроса с учётом ожидания соединения / очереди писателя — то, что видит вызывающий
+    private static final ConcurrentHashMap<String, Metrics.Histogram> QUERY_LATENCY = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Metrics.Counter> QUERY_ERRORS = new ConcurrentHashMap<>();
+
     private final String url;
+    private final BlockingQueue<PooledConnection> readers;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private final PooledConnection writeConnection;
+    private final ExecutorService writer;
+    private final WriteBehindQueue<PendingWrite> writeBehind;
 
     public Database(String dbFile) {
+        this(dbFile, 4, 10_000, 500, 200L);
+    }
+
+    /**
+     * @param writeBehindCapacity размер очереди отложенных записей
+     * @param writeBatchSize      сколько записей максимум уходит одной транзакцией
+     * @param writeFlushMs        сколько максимум запись ждёт в очереди до сброса
+     */
+    public Database(String dbFile, int readPoolSize,
+                    int writeBehindCapacity, int writeBatchSize, long writeFlushMs) {
         this.url = "jdbc:sqlite:" + dbFile;
+        this.writer = Executors.newSingleThreadExecutor(OutboundQueue.namedThreads("db-writer"));
+        try {
+            // писатель открывается первым: он переводит файл в WAL, и читатели уже открывают его в этом режиме
+            this.writeConnection = open(false);
+            int size = Math.max(1, readPoolSize);
+            this.readers = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                PooledConnection reader = open(true);
+                allReaders.add(reader);
+                readers.add(reader);
+            }
+        } catch (SQLException e) {
+            writer.shutdownNow();
+            throw new IllegalStateException("Cannot open SQLite database " + url, e);
+        }
         init();
+        this.writeBehind = new WriteBehindQueue<>("db-write-behind", this::writeBatch,
+                writeBehindCapacity, writeBatchSize, writeFlushMs);
+    }
+
+    private PooledConnection open(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA busy_timeout = 5000");
+            if (!readOnly) {
+                st.execute("PRAGMA journal_mode = WAL");
+            }
+            // в WAL-режиме NORMAL безопасен для целостности и не делает fsync на каждый коммит
+            st.execute("PRAGMA synchronous = NORMAL");
+            st.execute("PRAGMA cache_size = -16000");
+            st.execute("PRAGMA mmap_size = 268435456");
+            st.execute("PRAGMA temp_store = MEMORY");
+            if (readOnly) {
+                st.execute("PRAGMA query_only = 1");
+            }
+        }
+        return new PooledConnection(conn);
     }
 
     private void init() {
-        try (Connection conn = getConnection();
-             Statement st = conn.createStatement()) {
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS users (
-                    chat_id INTEGER PRIMARY KEY,
-                    username TEXT,
-                    first_start_at INTEGER,
-                    last_start_at INTEGER,
-                    is_blocked INTEGER DEFAULT 0
-                );
-            """);
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS callback_log (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    chat_id INTEGER NOT NULL,
-                    callback_data TEXT NOT NULL,
-                    created_at INTEGER NOT NULL
-                );
-            """);
-
-            st.execute("""
-                CREATE INDEX IF NOT EXISTS idx_callback_chat_data
-                ON callback_log (chat_id, callback_data, created_at);
-            """);
-
-            // Кэш file_id для медиа (фото/видео и т.п.)
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS media_cache (
-                    media_key TEXT PRIMARY KEY,
-                    file_id TEXT NOT NULL
-                );
-            """);
+        try {
+            write("init", conn -> {
+                try (Statement st = conn.connection.createStatement()) {
+
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS users (
+                            chat_id INTEGER PRIMARY KEY,
+                            username TEXT,
+                            first_start_at INTEGER,
+                            last_start_at INTEGER,
+                            is_blocked INTEGER DEFAULT 0
+                        );
+                    """);
+                    // предыдущий /start: его возвращает upsert в saveStart
+                    addColumnIfMissing(st, "users", "prev_start_at", "INTEGER");
+
+                    // только чаты, куда можно писать: по нему идут рассылки и подсчёты
+                    st.execute("""
+                        CREATE INDEX IF NOT EXISTS idx_users_active
+                        ON users (chat_id) WHERE is_blocked = 0;
+                    """);
+
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS callback_log (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            chat_id INTEGER NOT NULL,
+                            callback_data TEXT NOT NULL,
+                            created_at INTEGER NOT NULL
+                        );
+                    """);
+
+                    st.execute("""
+                        CREATE INDEX IF NOT EXISTS idx_callback_chat_data
+                        ON callback_log (chat_id, callback_data, created_at);
+                    """);
+
+                    // Суточные агрегаты по callback_log: сырые строки после свёртки удаляются (см. CallbackLogRetention)
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS callback_daily (
+                            day INTEGER NOT NULL,
+                            callback_data TEXT NOT NULL,
+                            chat_id INTEGER NOT NULL,
+                            presses INTEGER NOT NULL,
+                            PRIMARY KEY (day, callback_data, chat_id)
+                        ) WITHOUT ROWID;
+                    """);
+
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS callback_daily_totals (
+                            day INTEGER NOT NULL,
+                            callback_data TEXT NOT NULL,
+                            presses INTEGER NOT NULL,
+                            PRIMARY KEY (day, callback_data)
+                        ) WITHOUT ROWID;
+                    """);
+
+                    // Служебные значения (например, до какого id callback_log уже свёрнут)
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS bot_state (
+                            name TEXT PRIMARY KEY,
+                            value INTEGER NOT NULL
+                        );
+                    """);
+                    // двоичное значение к числу (биты обработанных update_id выше смещения)
+                    addColumnIfMissing(st, "bot_state", "data", "BLOB");
+
+                    // Рассылки: last_chat_id — все чаты с chat_id <= него уже обработаны (точка возобновления)
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS broadcasts (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            section TEXT NOT NULL,
+                            status TEXT NOT NULL,
+                            last_chat_id INTEGER NOT NULL,
+                            delivered INTEGER NOT NULL DEFAULT 0,
+                            total INTEGER NOT NULL,
+                            created_at INTEGER NOT NULL,
+                            finished_at INTEGER
+                        );
+                    """);
+
+                    // Кэш file_id для медиа (фото/видео и т.п.)
+                    st.execute("""
+                        CREATE TABLE IF NOT EXISTS media_cache (
+                            media_key TEXT PRIMARY KEY,
+                            file_id TEXT NOT NULL
+                        );
+                    """);
+                }
+                return null;
+            });
 
             log.info("SQLite schema initialized");
         } catch (SQLException e) {
@@ -58,176 +260,628 @@ public class Database implements AutoCloseable {
         }
     }
 
-    private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url);
+    private static void addColumnIfMissing(Statement st, String table, String column, String type) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
     }
 
     /**
-     * Проверка: запускал ли пользователь /start хотя бы раз.
+     * Выполнить чтение на соединении из пула.
+     *
+     * @param query имя запроса для метрик
      */
-    public boolean hasUserStarted(long chatId) {
-        String sql = "SELECT 1 FROM users WHERE chat_id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setLong(1, chatId);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+    private <T> T read(String query, String sql, SqlFunction<PreparedStatement, T> body) throws SQLException {
+        long started = System.nanoTime();
+        PooledConnection conn = borrowReader();
+        try {
+            PreparedStatement ps = conn.prepare(sql);
+            try {
+                return body.apply(ps);
+            } finally {
+                ps.clearParameters();
             }
         } catch (SQLException e) {
-            log.error("Error in hasUserStarted", e);
-            return false;
+            queryErrors(query).inc();
+            throw e;
+        } finally {
+            readers.add(conn);
+            queryLatency(query).recordSince(started);
         }
     }
 
     /**
-     * Обновление/создание записи о запуске /start.
+     * Выполнить запись на потоке писателя и дождаться результата.
+     *
+     * @param query имя запроса для метрик
      */
-    public void saveStart(long chatId, String username) {
-        long now = System.currentTimeMillis();
+    private <T> T write(String query, SqlFunction<PooledConnection, T> body) throws SQLException {
+        long started = System.nanoTime();
+        Future<T> result = writer.submit(() -> body.apply(writeConnection));
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database writer", e);
+        } catch (ExecutionException e) {
+            queryErrors(query).inc();
+            if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            throw new SQLException("Database writer failed", e.getCause());
+        } finally {
+            queryLatency(query).recordSince(started);
+        }
+    }
 
-        if (hasUserStarted(chatId)) {
-            String update = "UPDATE users SET username = ?, last_start_at = ? WHERE chat_id = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement ps = conn.prepareStatement(update)) {
+    private static Metrics.Histogram queryLatency(String query) {
+        return QUERY_LATENCY.computeIfAbsent(query, q -> Metrics.histogram("waterbot_db_query_seconds",
+                "SQLite query latency including the wait for a connection or the writer thread", "query", q));
+    }
 
-                ps.setString(1, username);
-                ps.setLong(2, now);
-                ps.setLong(3, chatId);
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                log.error("Error updating user start", e);
-            }
-        } else {
-            String insert = """
-                INSERT INTO users (chat_id, username, first_start_at, last_start_at, is_blocked)
-                VALUES (?, ?, ?, ?, 0)
-            """;
-            try (Connection conn = getConnection();
-                 PreparedStatement ps = conn.prepareStatement(insert)) {
-
-                ps.setLong(1, chatId);
-                ps.setString(2, username);
-                ps.setLong(3, now);
-                ps.setLong(4, now);
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                log.error("Error inserting user start", e);
+    private static Metrics.Counter queryErrors(String query) {
+        return QUERY_ERRORS.computeIfAbsent(query, q -> Metrics.counter("waterbot_db_query_errors_total",
+                "Failed SQLite queries", "query", q));
+    }
+
+    private PooledConnection borrowReader() throws SQLException {
+        try {
+            return readers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+    }
+
+    /**
+     * Обновление/создание записи о запуске /start одним запросом.
+     *
+     * @return время предыдущего /start или null, если это первый запуск.
+     */
+    public Long saveStart(long chatId, String username, long nowMillis) {
+        try {
+            return write("save_start", conn -> upsertStart(conn, chatId, username, nowMillis));
+        } catch (SQLException e) {
+            log.error("Error in saveStart", e);
+            return null;
+        }
+    }
+
+    /**
+     * То же, что saveStart, но без ожидания: когда предыдущий /start уже известен из памяти.
+     */
+    public void saveStartAsync(long chatId, String username, long nowMillis) {
+        writeBehind.add(new UserStart(chatId, username, nowMillis));
+    }
+
+    private static Long upsertStart(PooledConnection conn, long chatId, String username, long nowMillis)
+            throws SQLException {
+        PreparedStatement ps = conn.prepare(UPSERT_START);
+        ps.setLong(1, chatId);
+        ps.setString(2, username);
+        ps.setLong(3, nowMillis);
+        ps.setLong(4, nowMillis);
+        try (ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                long previous = rs.getLong(1);
+                return rs.wasNull() ? null : previous;
             }
+            return null;
         }
     }
 
     /**
-     * Время последнего /start (для защиты от "двойного" старта).
+     * Логирование нажатия callback-кнопки (аудит и аналитика; антиспам живёт в FloodGuard).
+     */
+    public void saveCallbackUsage(long chatId, String callbackData, long nowMillis) {
+        writeBehind.add(new CallbackUsage(chatId, callbackData, nowMillis));
+    }
+
+    /**
+     * Отметить, что пользователь заблокировал бота (или разблокировал). Пишется фоном:
+     * до записи в БД рассылка может взять чат ещё раз — тогда отправка просто снова получит 403.
      */
-    public Long getLastStartAt(long chatId) {
-        String sql = "SELECT last_start_at FROM users WHERE chat_id = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    public void setBlocked(long chatId, boolean blocked) {
+        writeBehind.add(new UserBlocked(chatId, blocked));
+    }
 
-            ps.setLong(1, chatId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getLong(1);
+    /**
+     * Сброс пакета отложенных записей одной транзакцией на соединении писателя.
+     * Записи в users (/start и блокировки) применяются в порядке поступления: /start снимает блокировку,
+     * а kicked после него в том же пакете должен её вернуть. Подряд идущие записи одного вида
+     * отправляются одним executeBatch; журнал нажатий от порядка не зависит и идёт своим пакетом.
+     */
+    private void writeBatch(List<PendingWrite> batch) throws SQLException {
+        write("write_batch", conn -> {
+            PreparedStatement callbacks = null;
+            PreparedStatement starts = null;
+            PreparedStatement blocks = null;
+            // пакет записей в users, ещё не отправленный в БД (starts или blocks)
+            PreparedStatement unflushed = null;
+            conn.connection.setAutoCommit(false);
+            try {
+                for (PendingWrite item : batch) {
+                    if (item instanceof CallbackUsage usage) {
+                        if (callbacks == null) {
+                            callbacks = conn.prepare(INSERT_CALLBACK);
+                        }
+                        callbacks.setLong(1, usage.chatId());
+                        callbacks.setString(2, usage.callbackData());
+                        callbacks.setLong(3, usage.createdAt());
+                        callbacks.addBatch();
+                    } else if (item instanceof UserStart start) {
+                        if (starts == null) {
+                            starts = conn.prepare(UPSERT_START_BATCH);
+                        }
+                        if (unflushed != null && unflushed != starts) {
+                            unflushed.executeBatch();
+                        }
+                        unflushed = starts;
+                        starts.setLong(1, start.chatId());
+                        starts.setString(2, start.username());
+                        starts.setLong(3, start.startedAt());
+                        starts.setLong(4, start.startedAt());
+                        starts.addBatch();
+                    } else if (item instanceof UserBlocked block) {
+                        if (blocks == null) {
+                            blocks = conn.prepare(SET_BLOCKED);
+                        }
+                        if (unflushed != null && unflushed != blocks) {
+                            unflushed.executeBatch();
+                        }
+                        unflushed = blocks;
+                        blocks.setInt(1, block.blocked() ? 1 : 0);
+                        blocks.setLong(2, block.chatId());
+                        blocks.addBatch();
+                    }
+                }
+                if (callbacks != null) {
+                    callbacks.executeBatch();
+                }
+                if (unflushed != null) {
+                    unflushed.executeBatch();
                 }
+                conn.connection.commit();
+            } catch (SQLException e) {
+                conn.connection.rollback();
+                throw e;
+            } finally {
+                conn.connection.setAutoCommit(true);
             }
+            return null;
+        });
+    }
+
+    /**
+     * Свернуть очередную порцию callback_log в суточные агрегаты (одна короткая транзакция).
+     *
+     * @return сколько сырых строк свёрнуто; 0 — свёртка догнала журнал.
+     */
+    public int rollupCallbackLog(int batchSize) {
+        try {
+            return write("rollup_callback_log", conn -> {
+                long from = readState(conn, ROLLUP_WATERMARK);
+                long to;
+                PreparedStatement max = conn.prepare("SELECT COALESCE(MAX(id), 0) FROM callback_log");
+                try (ResultSet rs = max.executeQuery()) {
+                    rs.next();
+                    to = Math.min(rs.getLong(1), from + batchSize);
+                }
+                if (to <= from) {
+                    return 0;
+                }
+
+                conn.connection.setAutoCommit(false);
+                try {
+                    for (String sql : new String[]{ROLLUP_DAILY, ROLLUP_TOTALS}) {
+                        PreparedStatement ps = conn.prepare(sql);
+                        ps.setLong(1, from);
+                        ps.setLong(2, to);
+                        ps.executeUpdate();
+                    }
+                    writeState(conn, ROLLUP_WATERMARK, to);
+                    conn.connection.commit();
+                } catch (SQLException e) {
+                    conn.connection.rollback();
+                    throw e;
+                } finally {
+                    conn.connection.setAutoCommit(true);
+                }
+                return (int) (to - from);
+            });
         } catch (SQLException e) {
-            log.error("Error in getLastStartAt", e);
+            log.error("Error in rollupCallbackLog", e);
+            return 0;
         }
-        return null;
     }
 
     /**
-     * Проверка спама по коллбэкам: слишком частые повторные нажатия.
+     * Удалить порцию уже свёрнутых строк callback_log старше cutoffMillis.
      *
-     * @return true, если это спам и контент лучше не отправлять.
-     */
-    public boolean isCallbackSpam(long chatId, String callbackData,
-                                  long nowMillis, long minIntervalMillis) {
-        String sql = """
-            SELECT created_at
-            FROM callback_log
-            WHERE chat_id = ? AND callback_data = ?
-            ORDER BY created_at DESC
-            LIMIT 1
-        """;
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setLong(1, chatId);
-            ps.setString(2, callbackData);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    long last = rs.getLong(1);
-                    return (nowMillis - last) < minIntervalMillis;
-                }
-                return false;
-            }
+     * @return сколько строк удалено; 0 — удалять больше нечего.
+     */
+    public int purgeCallbackLog(long cutoffMillis, int batchSize) {
+        try {
+            return write("purge_callback_log", conn -> {
+                PreparedStatement ps = conn.prepare(PURGE_CALLBACK_LOG);
+                ps.setLong(1, readState(conn, ROLLUP_WATERMARK));
+                ps.setLong(2, cutoffMillis);
+                ps.setInt(3, batchSize);
+                return ps.executeUpdate();
+            });
         } catch (SQLException e) {
-            log.error("Error in isCallbackSpam", e);
-            return false;
+            log.error("Error in purgeCallbackLog", e);
+            return 0;
         }
     }
 
+    private static long readState(PooledConnection conn, String name) throws SQLException {
+        PreparedStatement ps = conn.prepare("SELECT value FROM bot_state WHERE name = ?");
+        ps.setString(1, name);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    private static void writeState(PooledConnection conn, String name, long value) throws SQLException {
+        PreparedStatement ps = conn.prepare("""
+            INSERT INTO bot_state (name, value) VALUES (?, ?)
+            ON CONFLICT(name) DO UPDATE SET value = excluded.value
+        """);
+        ps.setString(1, name);
+        ps.setLong(2, value);
+        ps.executeUpdate();
+    }
+
     /**
-     * Логирование нажатия callback-кнопки.
+     * Подтверждённое смещение апдейтов и биты уже обработанных update_id выше него; null — ещё не сохранялось.
      */
-    public void saveCallbackUsage(long chatId, String callbackData, long nowMillis) {
-        String sql = "INSERT INTO callback_log (chat_id, callback_data, created_at) VALUES (?, ?, ?)";
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    public UpdateState loadUpdateState() {
+        try {
+            return read("load_update_state", "SELECT name, value, data FROM bot_state WHERE name IN (?, ?)", ps -> {
+                ps.setString(1, UPDATE_OFFSET);
+                ps.setString(2, UPDATE_SAVED_AT);
+                Long offset = null;
+                byte[] processed = null;
+                long savedAt = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (UPDATE_OFFSET.equals(rs.getString(1))) {
+                            offset = rs.getLong(2);
+                            processed = rs.getBytes(3);
+                        } else {
+                            savedAt = rs.getLong(2);
+                        }
+                    }
+                }
+                return offset != null ? new UpdateState(offset, processed, savedAt) : null;
+            });
+        } catch (SQLException e) {
+            log.error("Error in loadUpdateState", e);
+            return null;
+        }
+    }
 
-            ps.setLong(1, chatId);
-            ps.setString(2, callbackData);
-            ps.setLong(3, nowMillis);
-            ps.executeUpdate();
+    public void saveUpdateState(long offset, byte[] processed, long savedAtMillis) {
+        try {
+            write("save_update_state", conn -> {
+                writeState(conn, UPDATE_SAVED_AT, savedAtMillis);
+                PreparedStatement ps = conn.prepare("""
+                    INSERT INTO bot_state (name, value, data) VALUES (?, ?, ?)
+                    ON CONFLICT(name) DO UPDATE SET value = excluded.value, data = excluded.data
+                """);
+                ps.setString(1, UPDATE_OFFSET);
+                ps.setLong(2, offset);
+                ps.setBytes(3, processed);
+                ps.executeUpdate();
+                return null;
+            });
         } catch (SQLException e) {
-            log.error("Error in saveCallbackUsage", e);
+            log.error("Error in saveUpdateState", e);
         }
     }
 
     /**
-     * Получить file_id по ключу медиа.
+     * Очередь отложенных записей (глубина, время сброса и т.п. — для метрик).
      */
-    public String getMediaFileId(String mediaKey) {
-        String sql = "SELECT file_id FROM media_cache WHERE media_key = ?";
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    public WriteBehindQueue<PendingWrite> writeBehind() {
+        return writeBehind;
+    }
 
-            ps.setString(1, mediaKey);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString(1);
+    /**
+     * Вся таблица media_cache (для загрузки в память при старте).
+     */
+    public Map<String, String> loadMediaFileIds() {
+        try {
+            return read("load_media_file_ids", "SELECT media_key, file_id FROM media_cache", ps -> {
+                Map<String, String> result = new HashMap<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(rs.getString(1), rs.getString(2));
+                    }
                 }
-            }
+                return result;
+            });
         } catch (SQLException e) {
-            log.error("Error in getMediaFileId", e);
+            log.error("Error in loadMediaFileIds", e);
+            return Map.of();
         }
-        return null;
     }
 
     /**
      * Сохранить/обновить file_id по ключу медиа.
      */
     public void saveMediaFileId(String mediaKey, String fileId) {
-        String sql = """
-            INSERT INTO media_cache (media_key, file_id)
-            VALUES (?, ?)
-            ON CONFLICT(media_key) DO UPDATE SET file_id = excluded.file_id
-        """;
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, mediaKey);
-            ps.setString(2, fileId);
-            ps.executeUpdate();
+        try {
+            write("save_media_file_id", conn -> {
+                PreparedStatement ps = conn.prepare("""
+                    INSERT INTO media_cache (media_key, file_id)
+                    VALUES (?, ?)
+                    ON CONFLICT(media_key) DO UPDATE SET file_id = excluded.file_id
+                """);
+                ps.setString(1, mediaKey);
+                ps.setString(2, fileId);
+                ps.executeUpdate();
+                return null;
+            });
         } catch (SQLException e) {
             log.error("Error in saveMediaFileId", e);
         }
     }
 
+    /**
+     * Перенести file_id со старых ключей на новые одной транзакцией: строки renamed (старый → новый ключ)
+     * переписываются, если новый ключ ещё не занят, а все строки dropped удаляются.
+     *
+     * @return false, если транзакция не прошла (старые строки остались на месте)
+     */
+    public boolean rekeyMediaFileIds(Map<String, String> renamed, Collection<String> dropped) {
+        try {
+            return write("rekey_media_file_ids", conn -> {
+                conn.connection.setAutoCommit(false);
+                try {
+                    PreparedStatement copy = conn.prepare("""
+                        INSERT INTO media_cache (media_key, file_id)
+                        SELECT ?, file_id FROM media_cache WHERE media_key = ?
+                        ON CONFLICT(media_key) DO NOTHING
+                    """);
+                    for (Map.Entry<String, String> e : renamed.entrySet()) {
+                        copy.setString(1, e.getValue());
+                        copy.setString(2, e.getKey());
+                        copy.executeUpdate();
+                    }
+                    PreparedStatement delete = conn.prepare("DELETE FROM media_cache WHERE media_key = ?");
+                    for (String key : dropped) {
+                        delete.setString(1, key);
+                        delete.executeUpdate();
+                    }
+                    conn.connection.commit();
+                } catch (SQLException e) {
+                    conn.connection.rollback();
+                    throw e;
+                } finally {
+                    conn.connection.setAutoCommit(true);
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            log.error("Error in rekeyMediaFileIds", e);
+            return false;
+        }
+    }
+
+    /**
+     * Следующая страница chat_id после afterChatId (по возрастанию), без заблокировавших бота.
+     */
+    public long[] userPage(long afterChatId, int limit) {
+        try {
+            return read("user_page", USER_PAGE, ps -> {
+                ps.setLong(1, afterChatId);
+                ps.setInt(2, limit);
+                long[] page = new long[limit];
+                int n = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        page[n++] = rs.getLong(1);
+                    }
+                }
+                return n == limit ? page : Arrays.copyOf(page, n);
+            });
+        } catch (SQLException e) {
+            log.error("Error in userPage", e);
+            return new long[0];
+        }
+    }
+
+    /**
+     * Сколько незаблокированных пользователей с chat_id больше afterChatId (для прогресса рассылки).
+     */
+    public long countUsersAfter(long afterChatId) {
+        try {
+            return read("count_users", "SELECT COUNT(*) FROM users WHERE chat_id > ? AND is_blocked = 0", ps -> {
+                ps.setLong(1, afterChatId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } catch (SQLException e) {
+            log.error("Error in countUsersAfter", e);
+            return 0L;
+        }
+    }
+
+    /**
+     * Завести рассылку раздела по всем пользователям, не заблокировавшим бота.
+     *
+     * @return запись новой рассылки или null при ошибке БД.
+     */
+    public BroadcastRecord createBroadcast(String section, long nowMillis) {
+        try {
+            return write("create_broadcast", conn -> {
+                long total;
+                PreparedStatement count = conn.prepare("SELECT COUNT(*) FROM users WHERE is_blocked = 0");
+                try (ResultSet rs = count.executeQuery()) {
+                    rs.next();
+                    total = rs.getLong(1);
+                }
+                PreparedStatement ps = conn.prepare("""
+                    INSERT INTO broadcasts (section, status, last_chat_id, delivered, total, created_at)
+                    VALUES (?, ?, ?, 0, ?, ?)
+                    RETURNING id
+                """);
+                ps.setString(1, section);
+                ps.setString(2, BroadcastRecord.RUNNING);
+                ps.setLong(3, Long.MIN_VALUE);
+                ps.setLong(4, total);
+                ps.setLong(5, nowMillis);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return new BroadcastRecord(rs.getLong(1), section, BroadcastRecord.RUNNING, Long.MIN_VALUE,
+                            0, total, nowMillis);
+                }
+            });
+        } catch (SQLException e) {
+            log.error("Error in createBroadcast", e);
+            return null;
+        }
+    }
+
+    /**
+     * Последняя незавершённая рассылка (running или paused), если есть.
+     */
+    public BroadcastRecord unfinishedBroadcast() {
+        try {
+            return read("unfinished_broadcast", """
+                SELECT id, section, status, last_chat_id, delivered, total, created_at
+                FROM broadcasts WHERE status <> 'done'
+                ORDER BY id DESC LIMIT 1
+            """, ps -> {
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return new BroadcastRecord(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getLong(4),
+                            rs.getLong(5), rs.getLong(6), rs.getLong(7));
+                }
+            });
+        } catch (SQLException e) {
+            log.error("Error in unfinishedBroadcast", e);
+            return null;
+        }
+    }
+
+    /**
+     * Сохранить прогресс и статус рассылки.
+     *
+     * @param finishedAt время завершения или null, пока рассылка не закончена
+     */
+    public void checkpointBroadcast(long id, String status, long lastChatId, long delivered, Long finishedAt) {
+        try {
+            write("checkpoint_broadcast", conn -> {
+                PreparedStatement ps = conn.prepare(
+                        "UPDATE broadcasts SET status = ?, last_chat_id = ?, delivered = ?, finished_at = ? WHERE id = ?");
+                ps.setString(1, status);
+                ps.setLong(2, lastChatId);
+                ps.setLong(3, delivered);
+                if (finishedAt != null) {
+                    ps.setLong(4, finishedAt);
+                } else {
+                    ps.setNull(4, Types.INTEGER);
+                }
+                ps.setLong(5, id);
+                ps.executeUpdate();
+                return null;
+            });
+        } catch (SQLException e) {
+            log.error("Error in checkpointBroadcast", e);
+        }
+    }
+
     @Override
     public void close() {
-        // Ничего закрывать не нужно, соединения берём по месту
+        // сначала дописываем отложенные записи: они идут через поток писателя
+        writeBehind.close();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Database writer did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeConnection.close();
+        allReaders.forEach(PooledConnection::close);
+    }
+
+    /**
+     * Запись, которую можно отложить и сбросить пакетом.
+     */
+    public sealed interface PendingWrite permits CallbackUsage, UserStart, UserBlocked {
+    }
+
+    /**
+     * Сохранённое состояние {@link ProcessedUpdates}.
+     */
+    public record UpdateState(long offset, byte[] processed, long savedAt) {
+    }
+
+    /**
+     * Строка таблицы broadcasts.
+     *
+     * @param lastChatId все чаты с chat_id <= lastChatId уже обработаны
+     */
+    public record BroadcastRecord(long id, String section, String status, long lastChatId,
+                                  long delivered, long total, long createdAt) {
+        public static final String RUNNING = "running";
+        public static final String PAUSED = "paused";
+        public static final String DONE = "done";
+    }
+
+    record CallbackUsage(long chatId, String callbackData, long createdAt) implements PendingWrite {
+    }
+
+    record UserStart(long chatId, String username, long startedAt) implements PendingWrite {
+    }
+
+    record UserBlocked(long chatId, boolean blocked) implements PendingWrite {
+    }
+
+    @FunctionalInterface
+    interface SqlFunction<A, R> {
+        R apply(A arg) throws SQLException;
+    }
+
+    /**
+     * Соединение с кэшем подготовленных запросов. Используется одним потоком за раз.
+     */
+    static final class PooledConnection {
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Error closing SQLite connection", e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
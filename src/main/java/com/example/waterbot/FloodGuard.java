@@ -0,0 +1,72 @@
+package com.example.waterbot;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Антифлуд в памяти: скользящее окно по ключу (chatId, действие).
+ * <p>
+ * На каждый ключ хранится кольцо из последних limit разрешённых событий;
+ * новое событие разрешено, если самое старое из них вышло за окно. Это точное скользящее окно
+ * за O(1) без обращений к БД. Ключи, по которым давно ничего не было, вычищаются {@link #evictIdle}.
+ */
+public class FloodGuard {
+
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, Window>> chats = new ConcurrentHashMap<>();
+    private final long maxWindowMillis;
+
+    /**
+     * @param maxWindowMillis самое длинное окно из используемых правил — после него записи можно выбрасывать
+     */
+    public FloodGuard(long maxWindowMillis) {
+        this.maxWindowMillis = maxWindowMillis;
+    }
+
+    /**
+     * Зарегистрировать событие и проверить лимит.
+     *
+     * @return true, если событие укладывается в лимит (и учтено), false — если это флуд.
+     */
+    public boolean tryAcquire(long chatId, String action, int limit, long windowMillis, long nowMillis) {
+        Window window = chats
+                .computeIfAbsent(chatId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(action, a -> new Window(limit));
+        return window.tryAcquire(windowMillis, nowMillis);
+    }
+
+    /**
+     * Убирает чаты, в которых за последнее окно не было событий.
+     */
+    public void evictIdle(long nowMillis) {
+        chats.values().removeIf(actions -> {
+            actions.values().removeIf(window -> window.isIdle(nowMillis, maxWindowMillis));
+            return actions.isEmpty();
+        });
+    }
+
+    private static final class Window {
+        private final long[] events;
+        private int next;
+        private volatile long lastEvent;
+
+        Window(int limit) {
+            this.events = new long[Math.max(1, limit)];
+            Arrays.fill(events, Long.MIN_VALUE / 2);
+        }
+
+        synchronized boolean tryAcquire(long windowMillis, long nowMillis) {
+            // events[next] — самое старое из последних limit разрешённых событий
+            if (nowMillis - events[next] < windowMillis) {
+                return false;
+            }
+            events[next] = nowMillis;
+            next = (next + 1) % events.length;
+            lastEvent = nowMillis;
+            return true;
+        }
+
+        boolean isIdle(long nowMillis, long maxWindowMillis) {
+            return nowMillis - lastEvent >= maxWindowMillis;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Жизненный цикл процесса: состояние для проб готовности/живости и упорядоченная остановка по SIGTERM.
+ * <p>
+ * Компоненты регистрируются по мере запуска, а останавливаются в обратном порядке: сначала приём апдейтов,
+ * потом рассылка и обработчики, затем доставка дописывает очереди чатов, и последней закрывается БД
+ * (с отложенными записями). На всё ожидание у остановки один общий срок — его делят этапы по очереди.
+ */
+public class Lifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(Lifecycle.class);
+
+    public enum State { STARTING, READY, DRAINING, STOPPED }
+
+    /**
+     * Этап остановки; deadlineNanos — момент по System.nanoTime(), дольше которого ждать нельзя.
+     */
+    @FunctionalInterface
+    public interface Stage {
+        void stop(long deadlineNanos) throws Exception;
+    }
+
+    private record Named(String name, Stage stage) {
+    }
+
+    private final long shutdownTimeoutNanos;
+    private final Deque<Named> stages = new ArrayDeque<>();
+    private final AtomicBoolean stopping = new AtomicBoolean();
+    private volatile State state = State.STARTING;
+
+    /**
+     * @param shutdownTimeoutNanos сколько остановка может ждать доставку и записи;
+     *                             должно быть меньше срока, после которого оркестратор шлёт SIGKILL
+     */
+    public Lifecycle(long shutdownTimeoutNanos) {
+        this.shutdownTimeoutNanos = shutdownTimeoutNanos;
+    }
+
+    /**
+     * Компонент, которому при остановке ждать нечего.
+     */
+    public void register(String name, AutoCloseable resource) {
+        register(name, deadline -> resource.close());
+    }
+
+    public void register(String name, Stage stage) {
+        synchronized (this) {
+            if (!stopping.get()) {
+                stages.push(new Named(name, stage));
+                return;
+            }
+        }
+        // SIGTERM пришёл посреди запуска: то, что успело подняться после него, закрываем сразу
+        try {
+            stage.stop(System.nanoTime());
+        } catch (Exception e) {
+            log.error("Error stopping {}", name, e);
+        }
+    }
+
+    /**
+     * Остановка по SIGTERM/SIGINT (docker stop, kubectl delete pod, Ctrl+C).
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+    }
+
+    public void ready() {
+        if (state == State.STARTING) {
+            state = State.READY;
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * Готов принимать апдейты: на время запуска и остановки балансировщик/оркестратор трафик не шлёт.
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public boolean isAlive() {
+        return state != State.STOPPED;
+    }
+
+    /**
+     * Остановить все зарегистрированные компоненты; повторные вызовы ничего не делают.
+     */
+    public void shutdown() {
+        if (!stopping.compareAndSet(false, true)) {
+            return;
+        }
+        state = State.DRAINING;
+        long started = System.nanoTime();
+        long deadline = started + shutdownTimeoutNanos;
+        log.info("Shutting down, up to {} s to drain", TimeUnit.NANOSECONDS.toSeconds(shutdownTimeoutNanos));
+        Named named;
+        while ((named = poll()) != null) {
+            long stageStarted = System.nanoTime();
+            try {
+                named.stage().stop(deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while stopping {}", named.name());
+            } catch (Exception e) {
+                log.error("Error stopping {}", named.name(), e);
+            }
+            log.info("Stopped {} in {} ms", named.name(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stageStarted));
+        }
+        state = State.STOPPED;
+        log.info("Shutdown complete in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private synchronized Named poll() {
+        return stages.poll();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.waterbot;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш file_id медиа в памяти. Таблица media_cache целиком читается при старте,
+ * новые file_id пишутся сразу и в память, и в БД, так что в рабочем режиме чтений из SQLite нет.
+ */
+public class MediaCache {
+
+    // признак ключа по содержимому, см. MediaIndex
+    static final String CONTENT_KEY_MARK = ":sha256:";
+
+    private final Database database;
+    private final ConcurrentHashMap<String, String> fileIds;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MediaCache(Database database) {
+        this.database = database;
+        this.fileIds = new ConcurrentHashMap<>(database.loadMediaFileIds());
+    }
+
+    /**
+     * Ссылка на медиа по имени файла; ключ в кэше по содержимому даёт {@link MediaIndex#contentKey(String)}.
+     */
+    public static String photoKey(String fileName) {
+        return "photo:" + fileName;
+    }
+
+    public static String videoKey(String fileName) {
+        return "video:" + fileName;
+    }
+
+    /**
+     * file_id загруженного медиа из ответа Telegram (для фото — самый крупный размер).
+     */
+    public static String fileIdOf(Message msg) {
+        if (msg == null) {
+            return null;
+        }
+        if (msg.getPhoto() != null && !msg.getPhoto().isEmpty()) {
+            PhotoSize best = msg.getPhoto().get(msg.getPhoto().size() - 1);
+            return best.getFileId();
+        }
+        if (msg.getVideo() != null) {
+            return msg.getVideo().getFileId();
+        }
+        return null;
+    }
+
+    /**
+     * @return file_id или null, если медиа ещё не загружалось.
+     */
+    public String get(String mediaKey) {
+        String fileId = fileIds.get(mediaKey);
+        (fileId != null ? hits : misses).increment();
+        return fileId;
+    }
+
+    /**
+     * Все известные file_id для набора ключей за один вызов; ключей без file_id в ответе нет.
+     * Для прогрева и проверок: в счётчики попаданий не идёт, они меряют только отправки пользователям.
+     */
+    public Map<String, String> resolveAll(Collection<String> mediaKeys) {
+        Map<String, String> resolved = new HashMap<>(mediaKeys.size() * 2);
+        for (String key : mediaKeys) {
+            String fileId = fileIds.get(key);
+            if (fileId != null) {
+                resolved.put(key, fileId);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Запомнить file_id (write-through в media_cache).
+     */
+    public void put(String mediaKey, String fileId) {
+        String previous = fileIds.put(mediaKey, fileId);
+        if (!fileId.equals(previous)) {
+            database.saveMediaFileId(mediaKey, fileId);
+        }
+    }
+
+    /**
+     * Разовая миграция со старых ключей по имени файла ("photo:5.jpg") на ключи по содержимому:
+     * file_id переносится на {@link MediaIndex#contentKey(String)} файла, который сейчас лежит под этим именем,
+     * если по этому хэшу file_id ещё нет; строки для файлов, которых в каталоге больше нет, удаляются.
+     * Старые строки из media_cache удаляются в любом случае, так что при следующем старте мигрировать нечего.
+     *
+     * @return сколько старых ключей обработано
+     */
+    public int migrateNameKeys(MediaIndex index) {
+        Map<String, String> renamed = new HashMap<>();
+        List<String> legacy = new ArrayList<>();
+        for (String key : fileIds.keySet()) {
+            if (key.contains(CONTENT_KEY_MARK)) {
+                continue;
+            }
+            legacy.add(key);
+            String contentKey = index.contentKey(key);
+            if (contentKey != null) {
+                renamed.put(key, contentKey);
+            }
+        }
+        if (legacy.isEmpty() || !database.rekeyMediaFileIds(renamed, legacy)) {
+            return 0;
+        }
+        for (String key : legacy) {
+            String fileId = fileIds.remove(key);
+            String contentKey = renamed.get(key);
+            if (fileId != null && contentKey != null) {
+                fileIds.putIfAbsent(contentKey, fileId);
+            }
+        }
+        return legacy.size();
+    }
+
+    public int size() {
+        return fileIds.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Индекс файлов MEDIA_DIR по содержимому.
+ * <p>
+ * При старте каждый файл читается через mmap и хэшируется SHA-256 (файлы — параллельно).
+ * Ключ media_cache строится по хэшу, а не по имени: заменённый файл получает новый ключ
+ * и загружается заново один раз, одинаковые файлы под разными именами делят одну загрузку.
+ */
+public class MediaIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaIndex.class);
+
+    // файлы больше 2 ГБ в один MappedByteBuffer не помещаются — хэшируем окнами
+    private static final long MAP_WINDOW = 64L << 20;
+
+    /**
+     * Файл медиа: размер, время изменения и SHA-256 содержимого (hex).
+     */
+    public record Entry(String fileName, long size, long modifiedMillis, String sha256) {
+    }
+
+    private final Path dir;
+    private final Map<String, Entry> entries;
+    // "photo:5.jpg" -> "photo:sha256:<hex>", заранее для обоих видов медиа
+    private final Map<String, String> contentKeys;
+
+    private MediaIndex(Path dir, Map<String, Entry> entries) {
+        this.dir = dir;
+        this.entries = Map.copyOf(entries);
+        Map<String, String> keys = new HashMap<>(entries.size() * 4);
+        for (Entry e : entries.values()) {
+            keys.put(MediaCache.photoKey(e.fileName()), "photo" + MediaCache.CONTENT_KEY_MARK + e.sha256());
+            keys.put(MediaCache.videoKey(e.fileName()), "video" + MediaCache.CONTENT_KEY_MARK + e.sha256());
+        }
+        this.contentKeys = Map.copyOf(keys);
+    }
+
+    /**
+     * Просканировать каталог и захэшировать все файлы в нём (без подкаталогов).
+     * Нечитаемые файлы пропускаются с предупреждением; отсутствующий каталог даёт пустой индекс.
+     */
+    public static MediaIndex build(String mediaDir, int threads) {
+        return build(mediaDir, threads, null);
+    }
+
+    /**
+     * То же, но файлы с тем же размером и временем изменения, что в previous, не перечитываются.
+     */
+    public static MediaIndex build(String mediaDir, int threads, MediaIndex previous) {
+        Path dir = Path.of(mediaDir);
+        long started = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isRegularFile)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            log.error("Media index: cannot list {}", dir.toAbsolutePath(), e);
+            return new MediaIndex(dir, Map.of());
+        }
+
+        Map<String, Entry> entries = new HashMap<>(files.size() * 2);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, Math.max(1, files.size()))),
+                OutboundQueue.namedThreads("media-index"));
+        try {
+            List<Future<Entry>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(pool.submit(() -> hash(file, previous)));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    Entry entry = tasks.get(i).get();
+                    entries.put(entry.fileName(), entry);
+                } catch (ExecutionException e) {
+                    log.warn("Media index: cannot read {}", files.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long bytes = entries.values().stream().mapToLong(Entry::size).sum();
+        long distinct = entries.values().stream().map(Entry::sha256).distinct().count();
+        log.info("Media index: {} files ({} distinct, {} MB) in {} ms", entries.size(), distinct, bytes >> 20,
+                (System.nanoTime() - started) / 1_000_000);
+        return new MediaIndex(dir, entries);
+    }
+
+    private static Entry hash(Path file, MediaIndex previous) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Entry known = previous != null ? previous.entries.get(file.getFileName().toString()) : null;
+        if (known != null && known.size() == attrs.size() && known.modifiedMillis() == attrs.lastModifiedTime().toMillis()) {
+            return known;
+        }
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+                digest.update(window);
+            }
+        }
+        return new Entry(file.getFileName().toString(), attrs.size(), attrs.lastModifiedTime().toMillis(),
+                HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Ключ media_cache по содержимому для ссылки вида "photo:5.jpg" / "video:5.MP4".
+     *
+     * @return ключ или null, если такого файла в каталоге нет.
+     */
+    public String contentKey(String mediaKey) {
+        return contentKeys.get(mediaKey);
+    }
+
+    /**
+     * Файл на диске для ссылки вида "photo:5.jpg".
+     */
+    public Path fileOf(String mediaKey) {
+        return dir.resolve(mediaKey.substring(mediaKey.indexOf(':') + 1));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Ссылки, для которых в каталоге нет файла (в порядке первого упоминания, без повторов).
+     */
+    public List<String> missing(Collection<String> mediaKeys) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String key : mediaKeys) {
+            if (!contentKeys.containsKey(key)) {
+                result.add(key);
+            }
+        }
+        return List.copyOf(result);
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прогрев медиа при старте: всё, на что ссылаются разделы и чего ещё нет в media_cache,
+ * заранее загружается в служебный чат, чтобы первый пользователь не ждал загрузки мегабайтных видео.
+ * Загрузки идут параллельно: каждая ждёт свой слот служебного чата (MEDIA_WARMUP_PER_SEC) и слот общего
+ * бюджета RateLimiter; служебные сообщения потом удаляются (удаление — только из общего бюджета).
+ * 429 и временные ошибки повторяются по {@link RetryPolicy}: после retry_after ждут все загрузки.
+ */
+public class MediaWarmup {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaWarmup.class);
+
+    private final AbsSender sender;
+    private final MediaCache mediaCache;
+    private final MediaIndex mediaIndex;
+    private final RateLimiter limiter;
+    private final RetryPolicy retry;
+    private final long serviceChatId;
+    private final long uploadIntervalNanos;
+    private final int threads;
+    // время, раньше которого следующая загрузка в служебный чат не начнётся (System.nanoTime())
+    private final AtomicLong nextUpload = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param uploadsPerSecond темп загрузок в служебный чат; свой, а не лимит личного чата из RateLimiter
+     */
+    public MediaWarmup(AbsSender sender, MediaCache mediaCache, MediaIndex mediaIndex, RateLimiter limiter,
+                       RetryPolicy retry, long serviceChatId, long uploadsPerSecond, int threads) {
+        this.sender = sender;
+        this.mediaCache = mediaCache;
+        this.mediaIndex = mediaIndex;
+        this.limiter = limiter;
+        this.retry = retry;
+        this.serviceChatId = serviceChatId;
+        this.uploadIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1L, uploadsPerSecond);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Загрузить все незакэшированные медиа из списка. Ссылки без файла на диске пропускаются,
+     * файлы с одинаковым содержимым загружаются один раз.
+     *
+     * @return true, если после прогрева все существующие файлы есть в кэше.
+     */
+    public boolean run(Collection<String> mediaKeys, long timeout, TimeUnit unit) {
+        // ключ по содержимому -> первая ссылка на этот файл
+        Map<String, String> wanted = new LinkedHashMap<>();
+        for (String mediaKey : mediaKeys) {
+            String contentKey = mediaIndex.contentKey(mediaKey);
+            if (contentKey != null) {
+                wanted.putIfAbsent(contentKey, mediaKey);
+            }
+        }
+        List<String> missing = new ArrayList<>(wanted.keySet());
+        missing.removeAll(mediaCache.resolveAll(wanted.keySet()).keySet());
+        if (missing.isEmpty()) {
+            log.info("Media warmup: all {} media already cached", wanted.size());
+            return true;
+        }
+
+        log.info("Media warmup: uploading {} of {} media to chat {}", missing.size(), wanted.size(), serviceChatId);
+        long started = System.nanoTime();
+        AtomicInteger uploaded = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, OutboundQueue.namedThreads("media-warmup"));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String contentKey : missing) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        if (upload(contentKey, wanted.get(contentKey))) {
+                            uploaded.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        // таймаут прогрева: пул остановлен
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Future<?> task : tasks) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    break;
+                }
+                try {
+                    task.get(left, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    // ошибки конкретной загрузки уже залогированы в upload, таймаут — ниже
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        boolean complete = mediaCache.resolveAll(wanted.keySet()).size() == wanted.size();
+        log.info("Media warmup: uploaded {} of {} in {} ms{}", uploaded.get(), missing.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+                complete ? "" : " — some media are still not cached");
+        return complete;
+    }
+
+    private boolean upload(String contentKey, String mediaKey) throws InterruptedException {
+        String kind = mediaKey.substring(0, mediaKey.indexOf(':'));
+        File file = mediaIndex.fileOf(mediaKey).toFile();
+        long started = System.nanoTime();
+        int attempts = 0;
+
+        while (true) {
+            awaitUploadSlot();
+            awaitGlobalSlot();
+            try {
+                Message msg;
+                if ("video".equals(kind)) {
+                    SendVideo video = new SendVideo();
+                    video.setChatId(Long.toString(serviceChatId));
+                    video.setVideo(new InputFile(file));
+                    video.setDisableNotification(true);
+                    msg = sender.execute(video);
+                } else {
+                    SendPhoto photo = new SendPhoto();
+                    photo.setChatId(Long.toString(serviceChatId));
+                    photo.setPhoto(new InputFile(file));
+                    photo.setDisableNotification(true);
+                    msg = sender.execute(photo);
+                }
+
+                String fileId = MediaCache.fileIdOf(msg);
+                if (fileId == null) {
+                    log.warn("Media warmup: no file_id in response for {}", mediaKey);
+                    return false;
+                }
+                mediaCache.put(contentKey, fileId);
+                deleteQuietly(msg);
+                return true;
+            } catch (TelegramApiException e) {
+                RetryPolicy.RetryLater later = RetryPolicy.classify(e);
+                if (later == null) {
+                    log.error("Media warmup: upload of {} failed", mediaKey, e);
+                    return false;
+                }
+                long delay;
+                if (later.retryAfterNanos() > 0) {
+                    // 429 относится к служебному чату: откладываем все загрузки, а не только эту
+                    delay = later.retryAfterNanos();
+                    nextUpload.accumulateAndGet(System.nanoTime() + delay, Math::max);
+                } else if (++attempts >= retry.maxAttempts()) {
+                    log.error("Media warmup: upload of {} failed after {} attempts", mediaKey, attempts, e);
+                    return false;
+                } else {
+                    delay = retry.backoffNanos(attempts);
+                }
+                if (System.nanoTime() + delay - started > retry.deadlineNanos()) {
+                    log.error("Media warmup: giving up on {}: retry in {} ms would miss the deadline", mediaKey,
+                            TimeUnit.NANOSECONDS.toMillis(delay), e);
+                    return false;
+                }
+                log.debug("Media warmup: retrying {} in {} ms ({})", mediaKey, TimeUnit.NANOSECONDS.toMillis(delay),
+                        later.reason());
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+    }
+
+    private void deleteQuietly(Message msg) throws InterruptedException {
+        awaitGlobalSlot();
+        try {
+            sender.execute(new DeleteMessage(Long.toString(serviceChatId), msg.getMessageId()));
+        } catch (TelegramApiException e) {
+            log.debug("Media warmup: could not delete service message {}", msg.getMessageId(), e);
+        }
+    }
+
+    /**
+     * Занять следующий слот служебного чата: каждый поток резервирует своё время, без общей блокировки.
+     */
+    private void awaitUploadSlot() throws InterruptedException {
+        long now = System.nanoTime();
+        long slot = nextUpload.getAndAccumulate(now, (next, n) -> Math.max(next, n) + uploadIntervalNanos);
+        if (slot > now) {
+            TimeUnit.NANOSECONDS.sleep(slot - now);
+        }
+    }
+
+    private void awaitGlobalSlot() throws InterruptedException {
+        long wait;
+        while ((wait = limiter.tryAcquireGlobal()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.waterbot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Метрики процесса: счётчики, гистограммы задержек и gauge, выгружаемые в текстовом формате Prometheus.
+ * <p>
+ * Реестр общий на процесс: компоненты берут метрики один раз (в поля), а на горячем пути
+ * только инкрементируют LongAdder / AtomicLongArray — без блокировок и аллокаций.
+ * Гистограмма — лог-линейная, как в HdrHistogram: 16 подкорзин на каждую степень двойки
+ * (погрешность ~6%) на весь диапазон long, выгружается как summary с квантилями.
+ */
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // имя семейства -> семейство; сортировка только ради стабильного вывода
+    private static final ConcurrentSkipListMap<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels пары имя/значение: "method", "SendPhoto", ...
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").children.computeIfAbsent(labelString(labels), k -> new Counter());
+    }
+
+    /**
+     * Счётчик, который уже ведёт сам компонент (LongAdder и т.п.): значение снимается при выгрузке.
+     */
+    public static void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").children.put(labelString(labels), new FunctionCounter(value));
+    }
+
+    /**
+     * Гистограмма длительностей; значения записываются в наносекундах, выгружаются в секундах.
+     */
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "summary").children.computeIfAbsent(labelString(labels), k -> new Histogram());
+    }
+
+    /**
+     * Значение, которое снимается в момент выгрузки (глубина очереди, размер кэша и т.п.).
+     * Повторная регистрация с теми же метками заменяет источник.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").children.put(labelString(labels), new Gauge(value));
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelString(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus (version 0.0.4).
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Map.Entry<String, Family> e : FAMILIES.entrySet()) {
+            String name = e.getKey();
+            Family family = e.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> child : new ConcurrentSkipListMap<>(family.children).entrySet()) {
+                String labels = child.getKey();
+                Object metric = child.getValue();
+                if (metric instanceof Counter counter) {
+                    sample(out, name, labels, null, counter.get());
+                } else if (metric instanceof FunctionCounter counter) {
+                    sample(out, name, labels, null, counter.value.getAsLong());
+                } else if (metric instanceof Gauge gauge) {
+                    sample(out, name, labels, null, gauge.value.getAsDouble());
+                } else if (metric instanceof Histogram histogram) {
+                    Histogram.Snapshot snapshot = histogram.snapshot();
+                    for (double q : QUANTILES) {
+                        sample(out, name, labels, "quantile=\"" + q + "\"", snapshot.quantile(q) / 1e9);
+                    }
+                    sample(out, name + "_sum", labels, null, snapshot.sum() / 1e9);
+                    sample(out, name + "_count", labels, null, snapshot.count());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extra);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final ConcurrentHashMap<String, Object> children = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private record Gauge(DoubleSupplier value) {
+    }
+
+    private record FunctionCounter(LongSupplier value) {
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Лог-линейная гистограмма неотрицательных long (наносекунд).
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long value) {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(index(v));
+            sum.add(v);
+        }
+
+        /**
+         * Записать время, прошедшее с startNanos (System.nanoTime()).
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int index(long v) {
+            if (v < SUB) {
+                return (int) v;
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(v);
+            int shift = magnitude - SUB_BITS;
+            // старший бит отбрасываем: он задан magnitude, следующие SUB_BITS — подкорзина
+            return (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+        }
+
+        /**
+         * Середина диапазона значений корзины.
+         */
+        static long midpoint(int index) {
+            if (index < SUB) {
+                return index;
+            }
+            int shift = index / SUB - 1;
+            long lower = ((long) SUB + (index % SUB)) << shift;
+            return lower + ((1L << shift) >> 1);
+        }
+
+        public Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+                count += copy[i];
+            }
+            return new Snapshot(copy, count, sum.sum());
+        }
+
+        public record Snapshot(long[] counts, long count, long sum) {
+            public long quantile(double q) {
+                if (count == 0) {
+                    return 0;
+                }
+                long rank = (long) Math.ceil(q * count);
+                long seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    seen += counts[i];
+                    if (seen >= rank && counts[i] > 0) {
+                        return midpoint(i);
+                    }
+                }
+                return midpoint(counts.length - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.waterbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Локальный HTTP-эндпоинт /metrics в текстовом формате Prometheus и пробы /health/live, /health/ready.
+ * <p>
+ * По умолчанию слушает только 127.0.0.1: снаружи метрики забирает агент на той же машине
+ * (или порт явно пробрасывается через METRICS_HOST). Проверка: curl http://127.0.0.1:9464/metrics
+ * <p>
+ * /health/ready отвечает 200 только в состоянии READY: во время запуска (прогрев медиа) и остановки
+ * (дописываются очереди) — 503, чтобы при rolling restart трафик шёл на другой экземпляр.
+ * /health/live — 200, пока процесс не завершил остановку. Для проб из kubelet нужен METRICS_HOST=0.0.0.0.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Lifecycle lifecycle;
+
+    public MetricsServer(String host, int port, Lifecycle lifecycle) throws IOException {
+        this.lifecycle = lifecycle;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        // скрейп раз в 10-30 секунд — одного потока достаточно
+        this.executor = Executors.newSingleThreadExecutor(OutboundQueue.namedThreads("metrics-http"));
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handle);
+        server.createContext("/health/live", exchange -> health(exchange, lifecycle.isAlive()));
+        server.createContext("/health/ready", exchange -> health(exchange, lifecycle.isReady()));
+    }
+
+    public void start() {
+        server.start();
+        log.info("Metrics endpoint listening on http://{}/metrics", server.getAddress());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private void health(HttpExchange exchange, boolean ok) throws IOException {
+        try (exchange) {
+            byte[] body = (lifecycle.state().name() + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", TEXT);
+            exchange.sendResponseHeaders(ok ? 200 : 503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Журнал исходящей доставки: какие шаги разделов стоят в очередях чатов и ещё не выполнены.
+ * <p>
+ * Записи дописываются в конец сегмента, отображённого в память: постановка шага — (seq, chatId, id раздела,
+ * отпечаток плана, номер шага), выполнение — подтверждение seq. По отпечатку после перезапуска видно,
+ * что раздел с тех пор изменился и номер шага указывает уже на другое содержимое. Запись в отображённую память переживает падение процесса
+ * (страницы остаются в page cache ядра); force() делается при смене сегмента и при закрытии.
+ * Длина записи пишется последней, поэтому недописанная при падении запись читается как конец журнала.
+ * <p>
+ * Когда сегмент заполняется, неподтверждённые шаги переписываются в новый, а старый удаляется — журнал
+ * компактируется сам и занимает примерно столько, сколько шагов сейчас в очередях.
+ * При старте сегменты читаются, и неподтверждённые шаги отдаются на повторную доставку ({@link #recovered()}).
+ * <p>
+ * Каталогом владеет один процесс — тот, кто взял блокировку файла .lock. При перезапуске с общим томом
+ * новый экземпляр может подняться раньше, чем старый допишет очереди: тогда он работает без журнала
+ * (чужие сегменты не читает и не удаляет), а недоставленное старым подхватит следующий запуск.
+ */
+public class OutboundJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundJournal.class);
+
+    private static final String PREFIX = "outbound-";
+    private static final String SUFFIX = ".journal";
+    private static final String LOCK = ".lock";
+
+    private static final byte STEP = 1;
+    private static final byte ACK = 2;
+    // длина + тип + seq
+    private static final int HEADER = Integer.BYTES + 1 + Long.BYTES;
+    // chatId + отпечаток плана + номер шага + длина id раздела
+    private static final int STEP_FIELDS = 2 * Long.BYTES + Integer.BYTES + Short.BYTES;
+
+    /**
+     * Шаг раздела, поставленный в очередь чата и ещё не подтверждённый.
+     *
+     * @param planFingerprint {@link SectionPlan#fingerprint()} плана на момент постановки
+     */
+    public record PendingStep(long seq, long chatId, String planId, long planFingerprint, int stepIndex) {
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    // неподтверждённые шаги: их переписывает компактирование; всё состояние ниже — под this
+    private final Map<Long, PendingStep> live = new HashMap<>();
+    private long liveBytes;
+    private long nextSeq = 1;
+    private long generation;
+    private Path segmentPath;
+    private MappedByteBuffer segment;
+    private List<PendingStep> recovered = List.of();
+    private FileChannel lockChannel;
+
+    private final Metrics.Counter appends = Metrics.counter("waterbot_journal_appends_total",
+            "Delivery steps written to the outbound journal");
+    private final Metrics.Counter compactions = Metrics.counter("waterbot_journal_compactions_total",
+            "Outbound journal segment rollovers");
+
+    /**
+     * Открыть журнал в каталоге dir: прочитать оставшиеся сегменты и начать новый.
+     *
+     * @param segmentSize размер сегмента в байтах (больше — если неподтверждённых шагов много)
+     */
+    public OutboundJournal(Path dir, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = Math.max(64 * 1024, segmentSize);
+        Files.createDirectories(dir);
+        Metrics.gauge("waterbot_journal_live_steps", "Journaled delivery steps not yet acknowledged", this::liveSteps);
+        if (!lock()) {
+            log.warn("Outbound journal {} is locked by another instance, delivering without a journal", dir);
+            return;
+        }
+
+        List<Path> previous = segments();
+        for (Path file : previous) {
+            replay(file);
+        }
+        List<PendingStep> steps = new ArrayList<>(live.values());
+        steps.sort(Comparator.comparingLong(PendingStep::seq));
+        this.recovered = steps;
+
+        // новый сегмент с неподтверждёнными шагами; старые больше не нужны
+        roll();
+        for (Path file : previous) {
+            Files.deleteIfExists(file);
+        }
+        log.info("Outbound journal {}: {} undelivered steps recovered", dir, steps.size());
+    }
+
+    /**
+     * @return false — каталогом владеет другой живой процесс (блокировка снимается ОС при его завершении)
+     */
+    private boolean lock() throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                lockChannel = channel;
+                return true;
+            }
+        } catch (OverlappingFileLockException e) {
+            // тот же каталог уже открыт в этом процессе
+        }
+        channel.close();
+        return false;
+    }
+
+    /**
+     * Шаги, не выполненные до остановки процесса, в порядке постановки. Отдаются один раз:
+     * каждый надо либо доставить, либо подтвердить через {@link #ack(long)}.
+     */
+    public synchronized List<PendingStep> recovered() {
+        List<PendingStep> result = recovered;
+        recovered = List.of();
+        return result;
+    }
+
+    /**
+     * Записать постановку шага в очередь чата.
+     *
+     * @return seq для {@link #ack(long)}
+     */
+    public synchronized long append(long chatId, String planId, long planFingerprint, int stepIndex) {
+        PendingStep step = new PendingStep(nextSeq++, chatId, planId, planFingerprint, stepIndex);
+        int size = stepSize(step);
+        if (!ensureRoom(size)) {
+            return step.seq();
+        }
+        live.put(step.seq(), step);
+        liveBytes += size;
+        writeStep(segment, step);
+        appends.inc();
+        return step.seq();
+    }
+
+    /**
+     * Шаг выполнен (или отброшен): после перезапуска его повторять не нужно.
+     */
+    public synchronized void ack(long seq) {
+        PendingStep step = live.remove(seq);
+        if (step == null) {
+            return;
+        }
+        liveBytes -= stepSize(step);
+        if (!ensureRoom(HEADER)) {
+            return;
+        }
+        int position = segment.position();
+        segment.put(position + Integer.BYTES, ACK);
+        segment.putLong(position + Integer.BYTES + 1, seq);
+        commit(segment, position, HEADER);
+    }
+
+    public synchronized int liveSteps() {
+        return live.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+        }
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                log.warn("Cannot release the outbound journal lock", e);
+            }
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Места под запись нет — переходим на новый сегмент (с компактированием).
+     *
+     * @return false, если журнал недоступен (ошибка диска): доставка идёт дальше без него
+     */
+    private boolean ensureRoom(int size) {
+        if (segment == null) {
+            return false;
+        }
+        // после записи должно остаться место под нулевую длину — признак конца журнала
+        if (segment.remaining() >= size + Integer.BYTES) {
+            return true;
+        }
+        try {
+            Path full = segmentPath;
+            roll();
+            Files.deleteIfExists(full);
+            return true;
+        } catch (IOException e) {
+            log.error("Outbound journal rollover failed, journaling disabled", e);
+            segment = null;
+            return false;
+        }
+    }
+
+    /**
+     * Начать новый сегмент и переписать в него неподтверждённые шаги.
+     */
+    private void roll() throws IOException {
+        Path next = dir.resolve(String.format("%s%012d%s", PREFIX, ++generation, SUFFIX));
+        long capacity = Math.max(segmentSize, 2 * liveBytes + segmentSize / 4);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // файл растягивается до capacity и заполнен нулями
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        List<PendingStep> steps = new ArrayList<>(live.values());
+        steps.sort(Comparator.comparingLong(PendingStep::seq));
+        for (PendingStep step : steps) {
+            writeStep(buffer, step);
+        }
+        // новый сегмент должен быть на диске раньше, чем удалится старый
+        buffer.force();
+        segment = buffer;
+        segmentPath = next;
+        compactions.inc();
+        log.debug("Outbound journal rolled over to {} with {} live steps", next.getFileName(), steps.size());
+    }
+
+    private static void writeStep(MappedByteBuffer buffer, PendingStep step) {
+        byte[] planId = step.planId().getBytes(StandardCharsets.UTF_8);
+        int position = buffer.position();
+        int offset = position + Integer.BYTES;
+        buffer.put(offset, STEP);
+        buffer.putLong(offset + 1, step.seq());
+        buffer.putLong(offset + 1 + Long.BYTES, step.chatId());
+        buffer.putLong(offset + 1 + 2 * Long.BYTES, step.planFingerprint());
+        buffer.putInt(offset + 1 + 3 * Long.BYTES, step.stepIndex());
+        buffer.putShort(offset + 1 + 3 * Long.BYTES + Integer.BYTES, (short) planId.length);
+        buffer.put(offset + 1 + 3 * Long.BYTES + Integer.BYTES + Short.BYTES, planId);
+        commit(buffer, position, HEADER + STEP_FIELDS + planId.length);
+    }
+
+    /**
+     * Длина пишется после тела: до этого момента запись при чтении выглядит как конец журнала.
+     */
+    private static void commit(MappedByteBuffer buffer, int position, int size) {
+        buffer.putInt(position, size - Integer.BYTES);
+        buffer.position(position + size);
+    }
+
+    private static int stepSize(PendingStep step) {
+        return HEADER + STEP_FIELDS + step.planId().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void replay(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int records = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte type = buffer.get();
+            long seq = buffer.getLong();
+            if (type == STEP) {
+                long chatId = buffer.getLong();
+                long fingerprint = buffer.getLong();
+                int stepIndex = buffer.getInt();
+                short idLength = buffer.getShort();
+                if (idLength < 0 || HEADER + STEP_FIELDS + idLength != length + Integer.BYTES) {
+                    // запись другого формата (журнал прежней версии бота) — дальше читать нельзя
+                    log.warn("Outbound journal {}: malformed step record, rest of the segment skipped", file);
+                    break;
+                }
+                byte[] planId = new byte[idLength];
+                buffer.get(planId);
+                PendingStep step = new PendingStep(seq, chatId, new String(planId, StandardCharsets.UTF_8),
+                        fingerprint, stepIndex);
+                if (live.putIfAbsent(seq, step) == null) {
+                    liveBytes += stepSize(step);
+                }
+            } else if (type == ACK) {
+                PendingStep step = live.remove(seq);
+                if (step != null) {
+                    liveBytes -= stepSize(step);
+                }
+            } else {
+                log.warn("Outbound journal {}: unknown record type {}, rest of the segment skipped", file, type);
+                break;
+            }
+            nextSeq = Math.max(nextSeq, seq + 1);
+            records++;
+        }
+        log.debug("Outbound journal {}: {} records replayed", file.getFileName(), records);
+    }
+
+    /**
+     * Сегменты в порядке создания; номер следующего — после самого большого.
+     */
+    private List<Path> segments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try {
+                generation = Math.max(generation,
+                        Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                log.warn("Unexpected file in the outbound journal directory: {}", file);
+            }
+        }
+        return files;
+    }
+}
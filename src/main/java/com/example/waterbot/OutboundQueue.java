@@ -0,0 +1,355 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Исходящая доставка: своя упорядоченная очередь на каждый чат.
+ * Темп отправки задаёт RateLimiter, а ожидание выдерживается планировщиком,
+ * поэтому поток обработки апдейтов не спит и разные чаты получают контент параллельно.
+ * <p>
+ * Шаг, бросивший {@link RetryPolicy.RetryLater}, остаётся в голове очереди своего чата и повторяется
+ * позже (после 429 — через retry_after, иначе с задержкой из RetryPolicy); другие чаты тем временем идут дальше.
+ * <p>
+ * Шаги одного ответа можно объединить в {@link Session}: после её отмены ещё не начатые шаги снимаются
+ * без обращения к API — новый раздел, который пользователь открыл следом, не ждёт остатка прежнего.
+ * <p>
+ * Шаги рассылки ({@link #enqueueBulk}) берут слоты ещё и из бюджета рассылки в RateLimiter.
+ */
+public class OutboundQueue implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+    private static final long FLOOD_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Metrics.Counter RETRIES_RATE_LIMITED = retries(RetryPolicy.RetryLater.RATE_LIMITED);
+    private static final Metrics.Counter RETRIES_SERVER_ERROR = retries(RetryPolicy.RetryLater.SERVER_ERROR);
+    private static final Metrics.Counter RETRIES_NETWORK = retries(RetryPolicy.RetryLater.NETWORK);
+    private static final Metrics.Counter DROPPED_DEADLINE = dropped("deadline");
+    private static final Metrics.Counter DROPPED_ATTEMPTS = dropped("attempts");
+    private static final Metrics.Counter PAUSES_CHAT = pauses("chat");
+    private static final Metrics.Counter PAUSES_GLOBAL = pauses("global");
+    private static final Metrics.Counter PURGED = Metrics.counter("waterbot_outbound_purged_total",
+            "Outbound steps discarded because the chat became unreachable");
+    private static final Metrics.Counter CANCELLED = Metrics.counter("waterbot_outbound_cancelled_total",
+            "Outbound steps skipped because their section was superseded (Bot API sends saved)");
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentHashMap<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+    private final RateLimiter limiter;
+    private final RetryPolicy retry;
+    // шагов во всех очередях (ещё не выполненных)
+    private final LongAdder pending = new LongAdder();
+    // 429 за текущую секунду: много разных чатов сразу — значит, исчерпан общий лимит
+    private final AtomicLong floodWindowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger floodCount = new AtomicInteger();
+
+    public OutboundQueue(int threads, RateLimiter limiter, RetryPolicy retry) {
+        this.limiter = limiter;
+        this.retry = retry;
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, threads), namedThreads("outbound"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        // вёдра давно молчащих чатов не нужны — чистим раз в минуту
+        this.scheduler.scheduleWithFixedDelay(limiter::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Поставить шаг доставки в очередь чата. Шаги одного чата выполняются строго по порядку,
+     * каждый — только после того, как RateLimiter выдал слот.
+     */
+    public void enqueue(long chatId, Runnable step) {
+        enqueue(chatId, step, null);
+    }
+
+    /**
+     * То же, но onFinish вызывается, когда шаг выполнен или отброшен (повторы исчерпаны).
+     */
+    public void enqueue(long chatId, Runnable step, Runnable onFinish) {
+        enqueue(chatId, step, onFinish, null);
+    }
+
+    /**
+     * То же, но шаг снимается без выполнения, если к его очереди session уже отменена.
+     */
+    public void enqueue(long chatId, Runnable step, Runnable onFinish, Session session) {
+        add(chatId, step, onFinish, session, false);
+    }
+
+    /**
+     * Шаг рассылки: та же очередь чата, но темп ограничен бюджетом рассылки, а не только общим.
+     */
+    public void enqueueBulk(long chatId, Runnable step, Runnable onFinish) {
+        add(chatId, step, onFinish, null, true);
+    }
+
+    private void add(long chatId, Runnable step, Runnable onFinish, Session session, boolean bulk) {
+        pending.increment();
+        lanes.compute(chatId, (id, lane) -> {
+            if (lane == null) {
+                // очередь чата простаивает — первый шаг уходит сразу
+                lane = new ChatLane(id);
+                lane.steps.add(new Entry(step, onFinish, session, bulk, System.nanoTime(), ++lane.lastSeq));
+                schedule(lane, 0);
+            } else {
+                lane.steps.add(new Entry(step, onFinish, session, bulk, System.nanoTime(), ++lane.lastSeq));
+            }
+            return lane;
+        });
+    }
+
+    /**
+     * Отбросить всё, что уже стоит в очереди чата (пользователь заблокировал бота).
+     * Шаги снимаются при следующем drain без обращения к API, их onFinish вызывается;
+     * шаги, поставленные после purge, доставляются как обычно.
+     */
+    public void purge(long chatId) {
+        lanes.computeIfPresent(chatId, (id, lane) -> {
+            lane.purgedUpTo = lane.lastSeq;
+            return lane;
+        });
+    }
+
+    /**
+     * Количество чатов, у которых сейчас есть активная очередь доставки.
+     */
+    public int activeChats() {
+        return lanes.size();
+    }
+
+    /**
+     * Сколько шагов стоит во всех очередях чатов.
+     */
+    public long pending() {
+        return pending.sum();
+    }
+
+    private void schedule(ChatLane lane, long delayNanos) {
+        scheduler.schedule(() -> drain(lane), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Выполняет один шаг, если лимиты позволяют, иначе откладывает drain на время ожидания.
+     * Пока очередь чата есть в карте, для неё всегда запланирован ровно один drain.
+     */
+    private void drain(ChatLane lane) {
+        Entry head;
+        while ((head = lane.steps.peek()) != null && (head.seq <= lane.purgedUpTo || head.isCancelled())) {
+            lane.steps.poll();
+            pending.decrement();
+            (head.seq <= lane.purgedUpTo ? PURGED : CANCELLED).inc();
+            head.finish();
+        }
+        if (lane.steps.isEmpty()) {
+            // новых шагов нет — освобождаем очередь чата
+            lanes.compute(lane.chatId, (id, current) -> {
+                if (current != lane) {
+                    return current;
+                }
+                if (lane.steps.isEmpty()) {
+                    return null;
+                }
+                schedule(lane, 0);
+                return lane;
+            });
+            return;
+        }
+
+        long wait = limiter.tryAcquire(lane.chatId, head.bulk);
+        if (wait > 0) {
+            schedule(lane, wait);
+            return;
+        }
+
+        // шаг снимается с очереди только после выполнения: при повторе он должен остаться первым
+        Entry entry = lane.steps.peek();
+        try {
+            entry.step.run();
+        } catch (RetryPolicy.RetryLater e) {
+            long delay = retryDelay(lane.chatId, entry, e);
+            if (delay >= 0) {
+                schedule(lane, delay);
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.error("Outbound step failed for chat {}", lane.chatId, e);
+        }
+        lane.steps.poll();
+        pending.decrement();
+        entry.finish();
+        schedule(lane, 0);
+    }
+
+    /**
+     * @return через сколько наносекунд повторить шаг или -1, если его пора отбросить
+     */
+    private long retryDelay(long chatId, Entry entry, RetryPolicy.RetryLater e) {
+        long now = System.nanoTime();
+        long delay;
+        if (e.retryAfterNanos() > 0) {
+            delay = e.retryAfterNanos();
+            // паузу ставим в лимитере, чтобы её соблюдали и остальные шаги (и чаты, если пауза общая)
+            if (isGlobalFlood(now)) {
+                limiter.pauseGlobal(delay);
+                PAUSES_GLOBAL.inc();
+            } else {
+                limiter.pauseChat(chatId, delay);
+                PAUSES_CHAT.inc();
+            }
+        } else {
+            entry.attempts++;
+            if (entry.attempts >= retry.maxAttempts()) {
+                DROPPED_ATTEMPTS.inc();
+                log.warn("Dropping outbound step for chat {} after {} attempts ({})", chatId, entry.attempts,
+                        e.reason());
+                return -1;
+            }
+            delay = retry.backoffNanos(entry.attempts);
+        }
+        if (now + delay - entry.enqueuedNanos > retry.deadlineNanos()) {
+            DROPPED_DEADLINE.inc();
+            log.warn("Dropping outbound step for chat {}: retry in {} ms would miss the deadline ({})", chatId,
+                    TimeUnit.NANOSECONDS.toMillis(delay), e.reason());
+            return -1;
+        }
+        switch (e.reason()) {
+            case RetryPolicy.RetryLater.RATE_LIMITED -> RETRIES_RATE_LIMITED.inc();
+            case RetryPolicy.RetryLater.SERVER_ERROR -> RETRIES_SERVER_ERROR.inc();
+            default -> RETRIES_NETWORK.inc();
+        }
+        log.debug("Retrying outbound step for chat {} in {} ms ({})", chatId, TimeUnit.NANOSECONDS.toMillis(delay),
+                e.reason());
+        return delay;
+    }
+
+    /**
+     * Засчитать 429 и проверить, не пришло ли их за последнюю секунду больше порога.
+     */
+    private boolean isGlobalFlood(long now) {
+        long start = floodWindowStart.get();
+        if (now - start > FLOOD_WINDOW_NANOS && floodWindowStart.compareAndSet(start, now)) {
+            floodCount.set(0);
+        }
+        return floodCount.incrementAndGet() >= retry.globalPauseThreshold();
+    }
+
+    /**
+     * Дождаться, пока очереди всех чатов опустеют (при остановке, когда новых шагов уже не будет).
+     *
+     * @return true, если всё доставлено (или отброшено) до deadlineNanos (по System.nanoTime())
+     */
+    public boolean awaitDrained(long deadlineNanos) throws InterruptedException {
+        while (pending.sum() > 0) {
+            long left = deadlineNanos - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(left, TimeUnit.MILLISECONDS.toNanos(50)));
+        }
+        return true;
+    }
+
+    /**
+     * Остановить доставку; шаги, оставшиеся в очередях, теряются.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        };
+    }
+
+    private static Metrics.Counter retries(String reason) {
+        return Metrics.counter("waterbot_outbound_retries_total", "Outbound steps scheduled for another attempt",
+                "reason", reason);
+    }
+
+    private static Metrics.Counter dropped(String reason) {
+        return Metrics.counter("waterbot_outbound_dropped_total", "Outbound steps given up after failed retries",
+                "reason", reason);
+    }
+
+    private static Metrics.Counter pauses(String scope) {
+        return Metrics.counter("waterbot_rate_limit_pauses_total", "Rate limiter pauses after 429 responses",
+                "scope", scope);
+    }
+
+    /**
+     * Шаги одного ответа в очереди чата; отмена снимает те, что ещё не начали выполняться.
+     */
+    public static final class Session {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final class ChatLane {
+        final long chatId;
+        final Queue<Entry> steps = new ConcurrentLinkedQueue<>();
+        // номер последнего поставленного шага; меняется только внутри lanes.compute
+        long lastSeq;
+        // шаги с номером не больше этого отброшены через purge
+        volatile long purgedUpTo;
+
+        ChatLane(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private static final class Entry {
+        final Runnable step;
+        final Runnable onFinish;
+        final Session session;
+        final boolean bulk;
+        final long enqueuedNanos;
+        final long seq;
+        // неудачных попыток из-за 5xx и сетевых ошибок; меняется только в drain своего чата
+        int attempts;
+
+        Entry(Runnable step, Runnable onFinish, Session session, boolean bulk, long enqueuedNanos, long seq) {
+            this.step = step;
+            this.onFinish = onFinish;
+            this.session = session;
+            this.bulk = bulk;
+            this.enqueuedNanos = enqueuedNanos;
+            this.seq = seq;
+        }
+
+        boolean isCancelled() {
+            return session != null && session.isCancelled();
+        }
+
+        void finish() {
+            if (onFinish == null) {
+                return;
+            }
+            try {
+                onFinish.run();
+            } catch (RuntimeException e) {
+                log.error("Outbound completion callback failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.waterbot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Какие update_id уже приняты в обработку: повтор апдейта (webhook прислал ещё раз, getUpdates после
+ * перезапуска вернул неподтверждённую пачку) отбрасывается за O(1).
+ * <p>
+ * Окно из WINDOW бит над base — кольцо на long[]: бит id лежит по индексу id mod WINDOW.
+ * Всё, что меньше base, считается уже обработанным; приход id за пределами окна сдвигает его вперёд.
+ * <p>
+ * Подтверждённое смещение — наибольший id, до которого включительно все принятые апдейты обработаны
+ * (как точка возобновления у рассылки). Вместе с битами обработанных апдейтов выше него оно сохраняется
+ * в bot_state; после перезапуска polling продолжается с этого смещения, а уже обработанные апдейты выше
+ * него отбрасываются по битам.
+ */
+public class ProcessedUpdates {
+
+    private static final int WINDOW = 1 << 16;
+    private static final int MASK = WINDOW - 1;
+
+    private final long[] bits = new long[WINDOW / Long.SIZE];
+    // апдейты, принятые, но ещё не обработанные
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final Metrics.Counter duplicates = Metrics.counter("waterbot_updates_duplicate_total",
+            "Updates dropped because their update_id was already accepted");
+    // под this
+    private long base;
+    // наибольший id, пришедший в порядке поступления: до него всё, что не в обработке, обработано
+    private long maxAccepted;
+    // наибольший id с поднятым битом (после восстановления может быть больше maxAccepted)
+    private long maxSeen;
+
+    public ProcessedUpdates() {
+        Metrics.gauge("waterbot_updates_in_flight", "Updates accepted but not yet handled", inFlight::size);
+    }
+
+    /**
+     * Восстановить состояние, сохранённое {@link #snapshot()}.
+     */
+    public synchronized void restore(long committedOffset, byte[] processed) {
+        Arrays.fill(bits, 0L);
+        base = committedOffset + 1;
+        // апдейты между смещением и восстановленными битами ещё придут заново: смещение не двигаем, пока их нет
+        maxAccepted = committedOffset;
+        maxSeen = committedOffset;
+        if (processed == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(processed);
+        for (int i = 0; buffer.remaining() >= Long.BYTES; i += Long.SIZE) {
+            long word = buffer.getLong();
+            while (word != 0) {
+                long id = base + i + Long.numberOfTrailingZeros(word);
+                set(id);
+                maxSeen = Math.max(maxSeen, id);
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Принять апдейт в обработку.
+     *
+     * @return false — этот update_id уже был (или настолько старый, что выпал из окна)
+     */
+    public synchronized boolean accept(long updateId) {
+        if (updateId < base || updateId < base + WINDOW && isSet(updateId)) {
+            // уже обработан или в обработке — смещение за него можно двигать
+            maxAccepted = Math.max(maxAccepted, updateId);
+            duplicates.inc();
+            return false;
+        }
+        if (updateId >= base + WINDOW) {
+            slide(updateId - WINDOW + 1);
+        }
+        set(updateId);
+        maxAccepted = Math.max(maxAccepted, updateId);
+        maxSeen = Math.max(maxSeen, updateId);
+        // в том же замке, что и бит: snapshot не должен увидеть бит без отметки «в обработке»
+        inFlight.add(updateId);
+        return true;
+    }
+
+    /**
+     * Обработка апдейта завершена (успешно или нет — повторять её не нужно).
+     */
+    public void complete(long updateId) {
+        inFlight.remove(updateId);
+    }
+
+    /**
+     * Наибольший update_id, до которого включительно всё обработано; с него продолжается polling.
+     */
+    public synchronized long committedOffset() {
+        Long first = inFlight.isEmpty() ? null : inFlight.first();
+        return first != null ? first - 1 : maxAccepted;
+    }
+
+    /**
+     * Подтверждённое смещение и биты уже обработанных апдейтов выше него (апдейты в обработке не входят:
+     * после падения их надо обработать заново).
+     */
+    public synchronized Snapshot snapshot() {
+        long offset = committedOffset();
+        long from = Math.max(offset + 1, base);
+        // дальше окна биты не хранятся
+        int words = (int) Math.min(bits.length, Math.max(0, (maxSeen - offset + Long.SIZE - 1) / Long.SIZE));
+        ByteBuffer buffer = ByteBuffer.allocate(words * Long.BYTES);
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            for (int b = 0; b < Long.SIZE; b++) {
+                long id = offset + 1 + (long) w * Long.SIZE + b;
+                if (id >= from && id <= maxSeen && isSet(id) && !inFlight.contains(id)) {
+                    word |= 1L << b;
+                }
+            }
+            buffer.putLong(word);
+        }
+        return new Snapshot(offset, buffer.array());
+    }
+
+    public record Snapshot(long committedOffset, byte[] processed) {
+    }
+
+    private void slide(long newBase) {
+        if (newBase - base >= WINDOW) {
+            Arrays.fill(bits, 0L);
+        } else {
+            for (long id = base; id < newBase; id++) {
+                bits[(int) (id & MASK) >>> 6] &= ~(1L << (id & 63));
+            }
+        }
+        base = newBase;
+    }
+
+    private boolean isSet(long id) {
+        return (bits[(int) (id & MASK) >>> 6] & (1L << (id & 63))) != 0;
+    }
+
+    private void set(long id) {
+        bits[(int) (id & MASK) >>> 6] |= 1L << (id & 63);
+    }
+}
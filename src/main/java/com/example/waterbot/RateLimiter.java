@@ -0,0 +1,195 @@
+package com.example.waterbot;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничитель частоты под лимиты Telegram Bot API:
+ * общий бюджет бота (~30 сообщений/сек), личные чаты (~1/сек) и группы (20/мин).
+ * <p>
+ * Каждое ведро — это GCRA ("token bucket" без фонового пополнения):
+ * одно AtomicLong со временем следующего свободного слота, обновляется через CAS без блокировок.
+ * <p>
+ * Массовые отправки (рассылка) дополнительно проходят через своё ведро с частотой ниже общей:
+ * рассылка на пределе не выбирает общий бюджет целиком, и ответы на нажатия не встают за тысячами её шагов.
+ */
+public class RateLimiter {
+
+    private final Bucket global;
+    private final Bucket bulk;
+    private final long chatIntervalNanos;
+    private final long chatToleranceNanos;
+    private final long groupIntervalNanos;
+    private final long groupToleranceNanos;
+    private final ConcurrentHashMap<Long, Bucket> chats = new ConcurrentHashMap<>();
+
+    /**
+     * @param bulkPerSecond сколько сообщений в секунду из общего бюджета может занять рассылка
+     */
+    public RateLimiter(long globalPerSecond, long globalBurst, long bulkPerSecond,
+                       long chatPerSecond, long chatBurst,
+                       long groupPerMinute, long groupBurst) {
+        long globalInterval = intervalNanos(TimeUnit.SECONDS, globalPerSecond);
+        this.global = new Bucket(globalInterval, tolerance(globalInterval, globalBurst));
+        // без всплесков: рассылка идёт ровно, свободные слоты общего ведра достаются диалогам
+        this.bulk = new Bucket(intervalNanos(TimeUnit.SECONDS, Math.min(bulkPerSecond, globalPerSecond)), 0);
+        this.chatIntervalNanos = intervalNanos(TimeUnit.SECONDS, chatPerSecond);
+        this.chatToleranceNanos = tolerance(chatIntervalNanos, chatBurst);
+        this.groupIntervalNanos = intervalNanos(TimeUnit.MINUTES, groupPerMinute);
+        this.groupToleranceNanos = tolerance(groupIntervalNanos, groupBurst);
+    }
+
+    /**
+     * Лимиты из окружения, по умолчанию — рекомендации Telegram.
+     */
+    public static RateLimiter fromConfig() {
+        long globalPerSecond = Config.envLong("RATE_GLOBAL_PER_SEC", 30L);
+        return new RateLimiter(
+                globalPerSecond,
+                Config.envLong("RATE_GLOBAL_BURST", 30L),
+                // по умолчанию треть общего лимита остаётся диалогам
+                Config.envLong("RATE_BROADCAST_PER_SEC", Math.max(1L, globalPerSecond * 2 / 3)),
+                Config.envLong("RATE_CHAT_PER_SEC", 1L),
+                Config.envLong("RATE_CHAT_BURST", 1L),
+                Config.envLong("RATE_GROUP_PER_MIN", 20L),
+                Config.envLong("RATE_GROUP_BURST", 1L));
+    }
+
+    /**
+     * Попытка занять слот для сообщения в чат.
+     *
+     * @return 0, если слот занят и можно отправлять; иначе — сколько наносекунд подождать.
+     * Вызовы для одного чата должны идти последовательно (так работает OutboundQueue).
+     */
+    public long tryAcquire(long chatId) {
+        return tryAcquire(chatId, false);
+    }
+
+    /**
+     * То же для шага рассылки (bulk = true): слот нужен ещё и в бюджете рассылки.
+     */
+    public long tryAcquire(long chatId, boolean bulk) {
+        Bucket chat = chats.computeIfAbsent(chatId, this::newChatBucket);
+        // время — после создания ведра: новое ведро отсчитывает свой первый слот от момента создания
+        long now = System.nanoTime();
+
+        // сначала смотрим бюджеты чата и рассылки, не списывая их: если упрёмся в общий лимит, они не должны терять слот
+        long wait = chat.peek(now);
+        if (wait > 0) {
+            return wait;
+        }
+        if (bulk) {
+            wait = this.bulk.peek(now);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        wait = global.tryAcquire(now);
+        if (wait > 0) {
+            return wait;
+        }
+        chat.take(now);
+        if (bulk) {
+            this.bulk.take(now);
+        }
+        return 0;
+    }
+
+    /**
+     * Занять слот только в общем бюджете, не дожидаясь его
+     * (для вызовов вне очереди чата — AnswerCallbackQuery на потоке обработки апдейтов, прогрев медиа).
+     * Безопасно из нескольких потоков сразу.
+     *
+     * @return 0, если слот занят; иначе — сколько наносекунд до свободного слота.
+     */
+    public long tryAcquireGlobal() {
+        return global.tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Не выдавать слоты чату ближайшие pauseNanos (Telegram ответил 429 с retry_after для этого чата).
+     * Остальные чаты это не затрагивает.
+     */
+    public void pauseChat(long chatId, long pauseNanos) {
+        chats.computeIfAbsent(chatId, this::newChatBucket).pauseUntil(System.nanoTime() + pauseNanos);
+    }
+
+    /**
+     * Не выдавать слоты никому ближайшие pauseNanos: упёрлись в общий лимит бота.
+     */
+    public void pauseGlobal(long pauseNanos) {
+        global.pauseUntil(System.nanoTime() + pauseNanos);
+    }
+
+    /**
+     * Удаляет вёдра чатов, которые уже полностью "восстановились": они эквивалентны новым.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        chats.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    private Bucket newChatBucket(long chatId) {
+        // отрицательные id — группы, супергруппы и каналы
+        return chatId < 0
+                ? new Bucket(groupIntervalNanos, groupToleranceNanos)
+                : new Bucket(chatIntervalNanos, chatToleranceNanos);
+    }
+
+    private static long intervalNanos(TimeUnit per, long count) {
+        return per.toNanos(1) / Math.max(1L, count);
+    }
+
+    private static long tolerance(long interval, long burst) {
+        return interval * (Math.max(1L, burst) - 1);
+    }
+
+    /**
+     * GCRA: tat — теоретическое время прихода следующего сообщения.
+     * Сообщение разрешено, если tat - now <= tolerance.
+     */
+    private static final class Bucket {
+        private final long interval;
+        private final long tolerance;
+        private final AtomicLong tat;
+
+        Bucket(long interval, long tolerance) {
+            this.interval = interval;
+            this.tolerance = tolerance;
+            this.tat = new AtomicLong(System.nanoTime() - interval);
+        }
+
+        long peek(long now) {
+            return Math.max(0L, tat.get() - tolerance - now);
+        }
+
+        long tryAcquire(long now) {
+            while (true) {
+                long current = tat.get();
+                long wait = current - tolerance - now;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (tat.compareAndSet(current, Math.max(current, now) + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        void take(long now) {
+            tat.accumulateAndGet(now, (current, n) -> Math.max(current, n) + interval);
+        }
+
+        /**
+         * Сдвинуть tat так, чтобы следующий слот появился не раньше until (раньше назначенного не сдвигает).
+         */
+        void pauseUntil(long until) {
+            tat.accumulateAndGet(until + tolerance, Math::max);
+        }
+
+        boolean isIdle(long now) {
+            return tat.get() <= now;
+        }
+    }
+}
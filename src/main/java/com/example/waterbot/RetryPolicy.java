@@ -0,0 +1,138 @@
+package com.example.waterbot;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Какие ошибки Bot API стоит повторять и когда.
+ * <p>
+ * 429 Too Many Requests повторяется ровно через retry_after из ответа Telegram;
+ * 5xx и сетевые ошибки — с экспоненциальной задержкой со случайным разбросом.
+ * Остальные ошибки (400, 403...) повторять бессмысленно — сообщение отбрасывается сразу.
+ * Сами повторы выполняет OutboundQueue: шаг остаётся в голове очереди своего чата, остальные чаты не ждут.
+ */
+public final class RetryPolicy {
+
+    // если Telegram прислал 429 без retry_after
+    private static final long DEFAULT_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long deadlineNanos;
+    private final int maxAttempts;
+    private final long backoffBaseNanos;
+    private final long backoffMaxNanos;
+    private final int globalPauseThreshold;
+
+    /**
+     * @param deadlineNanos        сколько сообщение может ждать от постановки в очередь, прежде чем повторы прекратятся
+     * @param maxAttempts          попыток на 5xx/сетевые ошибки (429 не считаются — их темп задаёт Telegram)
+     * @param globalPauseThreshold сколько 429 за секунду означают, что упёрлись в общий лимит бота, а не чата
+     */
+    public RetryPolicy(long deadlineNanos, int maxAttempts, long backoffBaseNanos, long backoffMaxNanos,
+                       int globalPauseThreshold) {
+        this.deadlineNanos = deadlineNanos;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseNanos = Math.max(1L, backoffBaseNanos);
+        this.backoffMaxNanos = Math.max(this.backoffBaseNanos, backoffMaxNanos);
+        this.globalPauseThreshold = Math.max(1, globalPauseThreshold);
+    }
+
+    public static RetryPolicy fromConfig() {
+        return new RetryPolicy(
+                TimeUnit.SECONDS.toNanos(Config.envLong("SEND_DEADLINE_SEC", 120L)),
+                (int) Config.envLong("SEND_MAX_ATTEMPTS", 5L),
+                TimeUnit.MILLISECONDS.toNanos(Config.envLong("RETRY_BACKOFF_BASE_MS", 500L)),
+                TimeUnit.MILLISECONDS.toNanos(Config.envLong("RETRY_BACKOFF_MAX_MS", 30_000L)),
+                (int) Config.envLong("RETRY_GLOBAL_429_PER_SEC", 3L));
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    int globalPauseThreshold() {
+        return globalPauseThreshold;
+    }
+
+    /**
+     * Задержка перед попыткой номер attempt + 1: половина экспоненты плюс случайная вторая половина,
+     * чтобы чаты, упавшие на одной ошибке сервера, не вернулись к нему одновременно.
+     */
+    long backoffNanos(int attempt) {
+        long ceiling = backoffBaseNanos << Math.min(attempt - 1, 20);
+        ceiling = ceiling <= 0 ? backoffMaxNanos : Math.min(backoffMaxNanos, ceiling);
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /**
+     * 403: бот заблокирован, удалён из группы или аккаунт удалён — повторять бессмысленно, писать в чат нельзя.
+     */
+    static boolean isForbidden(TelegramApiException e) {
+        return e instanceof TelegramApiRequestException request
+                && request.getErrorCode() != null && request.getErrorCode() == 403;
+    }
+
+    /**
+     * @return исключение для OutboundQueue, если запрос стоит повторить, иначе null
+     */
+    static RetryLater classify(TelegramApiException e) {
+        if (e instanceof TelegramApiRequestException request) {
+            Integer code = request.getErrorCode();
+            if (code != null && code == 429) {
+                Integer retryAfter = request.getParameters() != null ? request.getParameters().getRetryAfter() : null;
+                long nanos = retryAfter != null && retryAfter > 0
+                        ? TimeUnit.SECONDS.toNanos(retryAfter)
+                        : DEFAULT_RETRY_AFTER_NANOS;
+                return new RetryLater(RetryLater.RATE_LIMITED, nanos);
+            }
+            if (code != null && code >= 500) {
+                return new RetryLater(RetryLater.SERVER_ERROR, 0);
+            }
+            // без кода — ответ не разобрался (например, HTML от прокси при 502)
+            return code == null && e.getCause() instanceof IOException
+                    ? new RetryLater(RetryLater.NETWORK, 0)
+                    : null;
+        }
+        return e.getCause() instanceof IOException ? new RetryLater(RetryLater.NETWORK, 0) : null;
+    }
+
+    /**
+     * Шаг доставки надо повторить позже; бросается из шага и перехватывается OutboundQueue.
+     */
+    public static final class RetryLater extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final String RATE_LIMITED = "rate_limited";
+        static final String SERVER_ERROR = "server_error";
+        static final String NETWORK = "network";
+
+        private final String reason;
+        private final long retryAfterNanos;
+
+        RetryLater(String reason, long retryAfterNanos) {
+            // стек не нужен: исключение — это сигнал очереди, а не ошибка в коде
+            super(reason, null, false, false);
+            this.reason = reason;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        String reason() {
+            return reason;
+        }
+
+        /**
+         * @return сколько ждать по указанию Telegram (429) или 0 — задержку выбирает RetryPolicy
+         */
+        long retryAfterNanos() {
+            return retryAfterNanos;
+        }
+    }
+}
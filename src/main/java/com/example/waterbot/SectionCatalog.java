@@ -0,0 +1,151 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Текущий набор разделов и индекс медиа с горячей перезагрузкой.
+ * <p>
+ * WatchService следит за MEDIA_DIR и его подкаталогом с текстами. После серии изменений
+ * (ждём, пока файлы перестанут меняться) манифест и индекс строятся заново и подменяются
+ * одной volatile-записью. Шаги, уже стоящие в очередях, остаются из старых планов —
+ * доставка не прерывается; новые нажатия сразу идут по новой версии.
+ * Если новый манифест некорректен, остаётся прежний набор.
+ */
+public class SectionCatalog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SectionCatalog.class);
+
+    private static final long QUIET_PERIOD_MS = 500;
+
+    private final String mediaDir;
+    private final int indexThreads;
+    private volatile Snapshot current;
+    private WatchService watcher;
+    private Thread thread;
+
+    /**
+     * Разделы и индекс медиа одной версии.
+     */
+    private record Snapshot(Sections sections, MediaIndex media) {
+    }
+
+    /**
+     * @throws IllegalStateException если манифест отсутствует или некорректен
+     */
+    public SectionCatalog(String mediaDir, int indexThreads) {
+        this.mediaDir = mediaDir;
+        this.indexThreads = indexThreads;
+        this.current = new Snapshot(Sections.load(mediaDir), MediaIndex.build(mediaDir, indexThreads));
+        log.info("Sections: {} loaded from {}", current.sections().size(), current.sections().origin());
+    }
+
+    public Sections sections() {
+        return current.sections();
+    }
+
+    public MediaIndex media() {
+        return current.media();
+    }
+
+    /**
+     * Ссылки разделов, для которых нет файла медиа.
+     */
+    public List<String> missingMedia() {
+        Snapshot snapshot = current;
+        return snapshot.media().missing(snapshot.sections().mediaKeys());
+    }
+
+    /**
+     * Перечитать манифест и каталог медиа.
+     *
+     * @return true, если новая версия подменила текущую.
+     */
+    public boolean reload() {
+        Snapshot previous = current;
+        Sections sections;
+        try {
+            sections = Sections.load(mediaDir);
+        } catch (RuntimeException e) {
+            log.error("Section reload failed, keeping the current version: {}", e.getMessage());
+            return false;
+        }
+        MediaIndex media = MediaIndex.build(mediaDir, indexThreads, previous.media());
+        current = new Snapshot(sections, media);
+
+        List<String> missing = missingMedia();
+        if (!missing.isEmpty()) {
+            log.warn("Sections reference {} media missing in {}: {}", missing.size(), mediaDir, missing);
+        }
+        log.info("Sections reloaded from {}: {} sections, {} media files", sections.origin(), sections.size(),
+                media.size());
+        return true;
+    }
+
+    /**
+     * Запустить слежение за файлами в фоновом потоке.
+     */
+    public synchronized void watch() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        Path dir = Path.of(mediaDir);
+        watcher = FileSystems.getDefault().newWatchService();
+        register(dir);
+        Path texts = dir.resolve("texts");
+        if (Files.isDirectory(texts)) {
+            register(texts);
+        }
+        thread = OutboundQueue.namedThreads("section-watch").newThread(this::watchLoop);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                drain(key);
+                // редактор или rsync пишут файлы несколькими событиями — ждём тишины
+                while ((key = watcher.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close()
+        }
+    }
+
+    private static void drain(WatchKey key) {
+        key.pollEvents();
+        key.reset();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                log.warn("Error closing section watcher", e);
+            }
+        }
+    }
+}
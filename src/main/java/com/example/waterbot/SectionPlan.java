@@ -0,0 +1,381 @@
+package com.example.waterbot;
+
+import org.telegram.telegrambots.meta.api.methods.ParseMode;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Раздел, заранее разобранный на готовые к отправке шаги.
+ * <p>
+ * План строится один раз при старте: подписи и тексты уже порезаны под лимиты Telegram
+ * (по границам, которые не рвут HTML-теги), клавиатуры — общие экземпляры.
+ * Шаги неизменяемы и разделяются всеми чатами; на нажатие остаётся только поставить их в очередь.
+ */
+public final class SectionPlan {
+
+    // лимиты Telegram
+    static final int MAX_MESSAGE_LENGTH = 4000;  // 4096 - небольшой запас
+    static final int MAX_CAPTION_LENGTH = 1024;
+
+    /**
+     * Один исходящий вызов. Клавиатура (если есть) общая для всех чатов — её нельзя менять.
+     */
+    public sealed interface Step permits Text, Photo, Video, Album {
+    }
+
+    /**
+     * @param parseMode ParseMode.HTML или null для простого текста
+     */
+    public record Text(String text, String parseMode, InlineKeyboardMarkup keyboard) implements Step {
+    }
+
+    /**
+     * @param caption подпись в HTML или null
+     */
+    public record Photo(String fileName, String caption, InlineKeyboardMarkup keyboard) implements Step {
+    }
+
+    /**
+     * @param caption подпись в HTML или null
+     */
+    public record Video(String fileName, String caption, InlineKeyboardMarkup keyboard) implements Step {
+    }
+
+    /**
+     * Несколько фото/видео подряд одним sendMediaGroup (2..10 элементов).
+     * В альбоме не бывает клавиатуры, поэтому элементы с кнопками в него не попадают.
+     * Подпись есть только у первого элемента: Telegram показывает под альбомом одну подпись.
+     */
+    public record Album(List<Step> items) implements Step {
+        public Album {
+            items = List.copyOf(items);
+        }
+    }
+
+    // лимит sendMediaGroup
+    static final int MAX_ALBUM_SIZE = 10;
+
+    private final String id;
+    private final List<Step> steps;
+    private final boolean interruptible;
+    private final long fingerprint;
+
+    private SectionPlan(String id, List<Step> steps, boolean interruptible) {
+        this.id = id;
+        this.steps = List.copyOf(steps);
+        this.interruptible = interruptible;
+        this.fingerprint = fingerprint(this.steps);
+    }
+
+    public static Builder builder(String id) {
+        return new Builder(id);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public List<Step> steps() {
+        return steps;
+    }
+
+    /**
+     * Хэш содержимого шагов (тексты, файлы, клавиатуры): одинаков для одинаковых планов в любом процессе.
+     * По нему журнал доставки отличает шаг прежней версии раздела от шага текущей.
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Можно ли бросить недоставленный остаток плана, если пользователь открыл другой раздел.
+     */
+    public boolean interruptible() {
+        return interruptible;
+    }
+
+    /**
+     * Ссылки на медиа плана вида "photo:5.jpg" / "video:5.MP4" (для прогрева и проверки файлов).
+     */
+    public List<String> mediaKeys() {
+        List<String> keys = new ArrayList<>();
+        for (Step step : steps) {
+            addMediaKeys(step, keys);
+        }
+        return keys;
+    }
+
+    private static void addMediaKeys(Step step, List<String> keys) {
+        if (step instanceof Photo photo) {
+            keys.add(MediaCache.photoKey(photo.fileName()));
+        } else if (step instanceof Video video) {
+            keys.add(MediaCache.videoKey(video.fileName()));
+        } else if (step instanceof Album album) {
+            album.items().forEach(item -> addMediaKeys(item, keys));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SectionPlan[" + id + ", " + steps.size() + " steps]";
+    }
+
+    /**
+     * Сборка плана в порядке отправки. Длинная подпись медиа делится: первая часть остаётся подписью,
+     * остаток уходит текстовыми сообщениями; клавиатура ставится на последнее сообщение элемента.
+     */
+    public static final class Builder {
+        private final String id;
+        private final List<Step> steps = new ArrayList<>();
+        private boolean albums;
+        private boolean interruptible = true;
+
+        private Builder(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Склеивать идущие подряд медиа без клавиатуры в альбомы.
+         */
+        public Builder albums(boolean albums) {
+            this.albums = albums;
+            return this;
+        }
+
+        /**
+         * false — план доставляется целиком, даже если пользователь тем временем открыл другой раздел.
+         */
+        public Builder interruptible(boolean interruptible) {
+            this.interruptible = interruptible;
+            return this;
+        }
+
+        /**
+         * HTML-текст с автосплитом по лимиту сообщения.
+         */
+        public Builder text(String html, InlineKeyboardMarkup keyboard) {
+            addText(html, ParseMode.HTML, keyboard);
+            return this;
+        }
+
+        /**
+         * Текст без разметки с тем же автосплитом.
+         */
+        public Builder plainText(String text, InlineKeyboardMarkup keyboard) {
+            addText(text, null, keyboard);
+            return this;
+        }
+
+        public Builder photo(String fileName, String caption, InlineKeyboardMarkup keyboard) {
+            String[] parts = splitCaption(caption);
+            steps.add(new Photo(fileName, parts[0], parts[1] == null ? keyboard : null));
+            addText(parts[1], ParseMode.HTML, keyboard);
+            return this;
+        }
+
+        public Builder video(String fileName, String caption, InlineKeyboardMarkup keyboard) {
+            String[] parts = splitCaption(caption);
+            steps.add(new Video(fileName, parts[0], parts[1] == null ? keyboard : null));
+            addText(parts[1], ParseMode.HTML, keyboard);
+            return this;
+        }
+
+        public SectionPlan build() {
+            return new SectionPlan(id, albums ? groupAlbums(steps) : steps, interruptible);
+        }
+
+        private void addText(String text, String parseMode, InlineKeyboardMarkup keyboard) {
+            if (text == null || text.isBlank()) {
+                return;
+            }
+            List<String> chunks = split(text, MAX_MESSAGE_LENGTH);
+            for (int i = 0; i < chunks.size(); i++) {
+                // клавиатуру вешаем только на последнюю часть
+                steps.add(new Text(chunks.get(i), parseMode, i == chunks.size() - 1 ? keyboard : null));
+            }
+        }
+    }
+
+    /**
+     * FNV-1a по каноническому описанию шагов: hashCode записей и клавиатур не гарантирован между версиями JDK.
+     */
+    private static long fingerprint(List<Step> steps) {
+        StringBuilder canonical = new StringBuilder();
+        for (Step step : steps) {
+            describe(step, canonical);
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonical.length(); i++) {
+            hash ^= canonical.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void describe(Step step, StringBuilder out) {
+        if (step instanceof Text text) {
+            field(out.append('T'), text.text()).append(text.parseMode());
+            describe(text.keyboard(), out);
+        } else if (step instanceof Photo photo) {
+            field(field(out.append('P'), photo.fileName()), photo.caption());
+            describe(photo.keyboard(), out);
+        } else if (step instanceof Video video) {
+            field(field(out.append('V'), video.fileName()), video.caption());
+            describe(video.keyboard(), out);
+        } else if (step instanceof Album album) {
+            out.append('A').append(album.items().size());
+            album.items().forEach(item -> describe(item, out));
+        }
+        out.append('\n');
+    }
+
+    private static void describe(InlineKeyboardMarkup keyboard, StringBuilder out) {
+        if (keyboard == null || keyboard.getKeyboard() == null) {
+            return;
+        }
+        for (List<InlineKeyboardButton> row : keyboard.getKeyboard()) {
+            out.append('K');
+            for (InlineKeyboardButton button : row) {
+                field(field(field(out, button.getText()), button.getCallbackData()), button.getUrl());
+            }
+        }
+    }
+
+    /**
+     * Поле с длиной впереди: соседние поля не склеиваются в одинаковые строки.
+     */
+    private static StringBuilder field(StringBuilder out, String value) {
+        return value == null ? out.append('-') : out.append(value.length()).append(':').append(value);
+    }
+
+    /**
+     * Заменяет серии из 2+ медиа подряд (без клавиатуры) альбомами по MAX_ALBUM_SIZE.
+     * Медиа с подписью может только начать альбом: подписи остальных элементов Telegram под альбомом
+     * не показывает, поэтому такое медиа уходит отдельным сообщением или открывает новый альбом.
+     */
+    static List<Step> groupAlbums(List<Step> steps) {
+        List<Step> result = new ArrayList<>(steps.size());
+        List<Step> run = new ArrayList<>(MAX_ALBUM_SIZE);
+        for (Step step : steps) {
+            if (albumItem(step)) {
+                if (hasCaption(step)) {
+                    flushRun(run, result);
+                }
+                run.add(step);
+                if (run.size() == MAX_ALBUM_SIZE) {
+                    flushRun(run, result);
+                }
+            } else {
+                flushRun(run, result);
+                result.add(step);
+            }
+        }
+        flushRun(run, result);
+        return result;
+    }
+
+    private static boolean albumItem(Step step) {
+        return step instanceof Photo photo && photo.keyboard() == null
+                || step instanceof Video video && video.keyboard() == null;
+    }
+
+    private static boolean hasCaption(Step step) {
+        String caption = step instanceof Photo photo ? photo.caption()
+                : step instanceof Video video ? video.caption() : null;
+        return caption != null && !caption.isBlank();
+    }
+
+    private static void flushRun(List<Step> run, List<Step> result) {
+        if (run.size() == 1) {
+            result.add(run.get(0));
+        } else if (run.size() > 1) {
+            result.add(new Album(run));
+        }
+        run.clear();
+    }
+
+    /**
+     * @return {подпись, остаток текста}; любой элемент может быть null.
+     */
+    static String[] splitCaption(String caption) {
+        if (caption == null || caption.isBlank()) {
+            return new String[2];
+        }
+        if (caption.length() <= MAX_CAPTION_LENGTH) {
+            return new String[]{caption, null};
+        }
+        int split = splitPoint(caption, 0, MAX_CAPTION_LENGTH);
+        String first = caption.substring(0, split).trim();
+        String rest = caption.substring(split).trim();
+        return new String[]{first.isEmpty() ? null : first, rest.isEmpty() ? null : rest};
+    }
+
+    /**
+     * Разбить текст на непустые части не длиннее limit.
+     */
+    static List<String> split(String text, int limit) {
+        List<String> chunks = new ArrayList<>();
+        int length = text.length();
+        int offset = 0;
+        while (offset < length) {
+            int end = length - offset <= limit ? length : splitPoint(text, offset, limit);
+            String chunk = text.substring(offset, end).trim();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            offset = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Где резать text, начиная с offset, чтобы часть была не длиннее limit.
+     * Предпочитаем перевод строки или пробел вне тегов и вне открытых элементов (&lt;b&gt;, &lt;a&gt;),
+     * затем просто вне тега, и только в крайнем случае режем по лимиту.
+     */
+    static int splitPoint(String text, int offset, int limit) {
+        int max = Math.min(text.length(), offset + limit);
+        int best = -1;
+        int outsideTag = -1;
+        boolean inTag = false;
+        int open = 0;
+        for (int i = offset; i < max; i++) {
+            char c = text.charAt(i);
+            if (inTag) {
+                if (c == '>') {
+                    inTag = false;
+                }
+                continue;
+            }
+            if (c == '<') {
+                inTag = true;
+                if (i + 1 < text.length() && text.charAt(i + 1) == '/') {
+                    open = Math.max(0, open - 1);
+                } else {
+                    open++;
+                }
+                continue;
+            }
+            if ((c == '\n' || c == ' ') && i > offset) {
+                outsideTag = i;
+                if (open == 0) {
+                    best = i;
+                }
+            }
+        }
+        // символ на позиции max уже уходит в следующую часть, поэтому его тоже можно взять границей
+        if (max < text.length() && !inTag && (text.charAt(max) == '\n' || text.charAt(max) == ' ')) {
+            outsideTag = max;
+            if (open == 0) {
+                best = max;
+            }
+        }
+        if (best > offset) {
+            return best;
+        }
+        return outsideTag > offset ? outsideTag : max;
+    }
+}
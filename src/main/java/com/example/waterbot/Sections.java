@@ -0,0 +1,331 @@
+package com.example.waterbot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разделы бота из манифеста MEDIA_DIR/sections.json.
+ * <p>
+ * Манифест описывает клавиатуры и разделы: шаги (текст, фото, видео), ссылки на файлы медиа
+ * и тексты — строкой или файлом (textFile, путь относительно MEDIA_DIR). Все разделы компилируются в планы
+ * сразу при загрузке: нечитаемый файл текста — ошибка загрузки, а не нажатия пользователя. План неизменяем
+ * и разделяется всеми чатами.
+ * <p>
+ * Большие тексты вынесены из кода в файлы, но лениво не читаются: число шагов плана зависит от нарезки текста,
+ * а журнал доставки хранит номер шага и отпечаток всего плана — и то и другое нужно знать заранее.
+ * Тексты всех разделов (~50 КБ) читаются, размечаются ссылками и режутся за единицы миллисекунд на загрузку
+ * и перезагрузку, в памяти держится только результат.
+ * <p>
+ * Если в MEDIA_DIR нет sections.json, берутся разделы по умолчанию, вшитые в jar (копия media/sections.json
+ * и media/texts из репозитория, см. pom.xml): в MEDIA_DIR тогда достаточно файлов фото и видео.
+ * Набор целиком неизменяем: новая версия манифеста даёт новый объект (см. SectionCatalog).
+ */
+public final class Sections {
+
+    public static final String MANIFEST = "sections.json";
+    // ресурсы jar с разделами по умолчанию
+    static final String BUNDLED = "/defaults/";
+
+    // служебные разделы, без которых бот не может ответить
+    static final String START = "start";
+    static final String MENU_HINT = "menu_hint";
+    static final String UNKNOWN_COMMAND = "unknown_command";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    record Manifest(Map<String, List<List<Button>>> keyboards, Map<String, SectionDef> sections) {
+    }
+
+    record Button(String text, String callback, String url) {
+    }
+
+    /**
+     * @param albums        true — идущие подряд фото/видео без кнопок уходят альбомами (sendMediaGroup)
+     * @param interruptible false — раздел доставляется до конца, даже если пользователь нажал другую кнопку
+     *                      (по умолчанию недоставленный остаток отменяется, и сразу начинается новый раздел)
+     */
+    record SectionDef(List<String> callbacks, Boolean albums, Boolean interruptible, List<StepDef> steps) {
+    }
+
+    /**
+     * Шаг раздела: photo или video (подпись — text/textFile) либо просто текст.
+     *
+     * @param html  false — текст без разметки (по умолчанию HTML)
+     * @param links слово -> URL: каждое вхождение слова (без учёта регистра) становится ссылкой
+     */
+    record StepDef(String photo, String video, String text, String textFile, Boolean html,
+                   String keyboard, Map<String, String> links) {
+    }
+
+    // в порядке манифеста
+    private final Map<String, SectionPlan> byId;
+    private final Map<String, SectionPlan> byCallback;
+    private final String origin;
+
+    private Sections(Map<String, SectionPlan> byId, Map<String, SectionPlan> byCallback, String origin) {
+        this.origin = origin;
+        this.byId = Collections.unmodifiableMap(byId);
+        this.byCallback = Map.copyOf(byCallback);
+    }
+
+    /**
+     * Прочитать и проверить манифест (клавиатуры, ссылки на клавиатуры, файлы текстов) и скомпилировать
+     * все разделы в планы.
+     *
+     * @throws IllegalStateException если манифест отсутствует или некорректен
+     */
+    public static Sections load(String mediaDir) {
+        Path dir = Path.of(mediaDir);
+        Source source = Files.exists(dir.resolve(MANIFEST)) ? new DirSource(dir) : new BundledSource();
+        String file = source.describe(MANIFEST);
+        Manifest manifest;
+        try {
+            byte[] json = source.read(MANIFEST);
+            if (json == null) {
+                throw new IOException("not found");
+            }
+            manifest = JSON.readValue(json, Manifest.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid section manifest " + file + ": " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read section manifest " + file, e);
+        }
+        if (manifest.sections() == null || manifest.sections().isEmpty()) {
+            throw new IllegalStateException("Section manifest " + file + " has no sections");
+        }
+
+        Map<String, InlineKeyboardMarkup> keyboards = new HashMap<>();
+        if (manifest.keyboards() != null) {
+            manifest.keyboards().forEach((name, rows) -> keyboards.put(name, keyboard(name, rows)));
+        }
+
+        Map<String, SectionPlan> byId = new LinkedHashMap<>();
+        Map<String, SectionPlan> byCallback = new HashMap<>();
+        manifest.sections().forEach((id, def) -> {
+            if (def.steps() == null || def.steps().isEmpty()) {
+                throw new IllegalStateException("Section '" + id + "' has no steps");
+            }
+            for (StepDef step : def.steps()) {
+                validate(id, step, keyboards);
+            }
+            SectionPlan plan = compile(source, id, def, keyboards);
+            byId.put(id, plan);
+            if (def.callbacks() != null) {
+                for (String callback : def.callbacks()) {
+                    if (byCallback.putIfAbsent(callback, plan) != null) {
+                        throw new IllegalStateException("Callback '" + callback + "' is bound to more than one section");
+                    }
+                }
+            }
+        });
+        for (String required : List.of(START, MENU_HINT, UNKNOWN_COMMAND)) {
+            if (!byId.containsKey(required)) {
+                throw new IllegalStateException("Section manifest has no '" + required + "' section");
+            }
+        }
+        return new Sections(byId, byCallback, source.describe(""));
+    }
+
+    private static void validate(String id, StepDef step, Map<String, InlineKeyboardMarkup> keyboards) {
+        if (step.photo() != null && step.video() != null) {
+            throw new IllegalStateException("Section '" + id + "': a step has both photo and video");
+        }
+        if (step.photo() == null && step.video() == null && step.text() == null && step.textFile() == null) {
+            throw new IllegalStateException("Section '" + id + "': a step has neither media nor text");
+        }
+        if (step.keyboard() != null && !keyboards.containsKey(step.keyboard())) {
+            throw new IllegalStateException("Section '" + id + "': unknown keyboard '" + step.keyboard() + "'");
+        }
+    }
+
+    public SectionPlan start() {
+        return byId.get(START);
+    }
+
+    /**
+     * Ответ на любое текстовое сообщение, кроме /start.
+     */
+    public SectionPlan menuHint() {
+        return byId.get(MENU_HINT);
+    }
+
+    public SectionPlan unknownCommand() {
+        return byId.get(UNKNOWN_COMMAND);
+    }
+
+    /**
+     * @return план раздела или null, если такой кнопки нет.
+     */
+    public SectionPlan byCallback(String callbackData) {
+        return callbackData == null ? null : byCallback.get(callbackData);
+    }
+
+    /**
+     * @return план раздела по его id из манифеста или null, если такого раздела нет.
+     */
+    public SectionPlan section(String id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    /**
+     * Откуда загружены разделы: каталог MEDIA_DIR или ресурсы jar.
+     */
+    public String origin() {
+        return origin;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Все callback data, на которые отвечает какой-либо раздел.
+     */
+    public Set<String> callbacks() {
+        return byCallback.keySet();
+    }
+
+    /**
+     * Все медиа, на которые ссылаются разделы, без повторов (для прогрева кэша file_id и проверки файлов).
+     */
+    public List<String> mediaKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (SectionPlan plan : byId.values()) {
+            keys.addAll(plan.mediaKeys());
+        }
+        return List.copyOf(keys);
+    }
+
+    /**
+     * Превратить каждое вхождение слова (целиком, без учёта регистра) в HTML-ссылку.
+     */
+    static String linkify(String html, String word, String url) {
+        String href = url.replace("&", "&amp;").replace("\"", "&quot;");
+        return Pattern.compile("(?iU)\\b" + Pattern.quote(word) + "\\b")
+                .matcher(html)
+                .replaceAll(Matcher.quoteReplacement("<a href=\"" + href + "\">") + "$0</a>");
+    }
+
+    static InlineKeyboardMarkup keyboard(String name, List<List<Button>> rows) {
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        for (List<Button> row : rows) {
+            List<InlineKeyboardButton> buttons = new ArrayList<>();
+            for (Button button : row) {
+                if ((button.callback() == null) == (button.url() == null)) {
+                    throw new IllegalStateException("Keyboard '" + name + "': button '" + button.text()
+                            + "' needs exactly one of callback or url");
+                }
+                InlineKeyboardButton b = new InlineKeyboardButton();
+                b.setText(button.text());
+                b.setCallbackData(button.callback());
+                b.setUrl(button.url());
+                buttons.add(b);
+            }
+            keyboard.add(buttons);
+        }
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(keyboard);
+        return markup;
+    }
+
+    private static SectionPlan compile(Source source, String id, SectionDef def,
+                                       Map<String, InlineKeyboardMarkup> keyboards) {
+        SectionPlan.Builder builder = SectionPlan.builder(id)
+                .albums(Boolean.TRUE.equals(def.albums()))
+                .interruptible(!Boolean.FALSE.equals(def.interruptible()));
+        for (StepDef step : def.steps()) {
+            String text = text(source, id, step);
+            InlineKeyboardMarkup keyboard = step.keyboard() != null ? keyboards.get(step.keyboard()) : null;
+            if (step.photo() != null) {
+                builder.photo(step.photo(), text, keyboard);
+            } else if (step.video() != null) {
+                builder.video(step.video(), text, keyboard);
+            } else if (Boolean.FALSE.equals(step.html())) {
+                builder.plainText(text, keyboard);
+            } else {
+                builder.text(text, keyboard);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String text(Source source, String id, StepDef step) {
+        String text = step.text();
+        if (step.textFile() != null) {
+            byte[] bytes;
+            try {
+                bytes = source.read(step.textFile());
+            } catch (IOException e) {
+                throw new IllegalStateException("Section '" + id + "': cannot read " + step.textFile(), e);
+            }
+            if (bytes == null) {
+                throw new IllegalStateException("Section '" + id + "': text file "
+                        + source.describe(step.textFile()) + " not found");
+            }
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (text != null && step.links() != null) {
+            for (Map.Entry<String, String> link : step.links().entrySet()) {
+                text = linkify(text, link.getKey(), link.getValue());
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Откуда читаются манифест и тексты.
+     */
+    private interface Source {
+        /**
+         * @return содержимое файла или null, если его нет
+         */
+        byte[] read(String path) throws IOException;
+
+        String describe(String path);
+    }
+
+    private record DirSource(Path dir) implements Source {
+        @Override
+        public byte[] read(String path) throws IOException {
+            Path file = dir.resolve(path);
+            return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+        }
+
+        @Override
+        public String describe(String path) {
+            return dir.resolve(path).toString();
+        }
+    }
+
+    private record BundledSource() implements Source {
+        @Override
+        public byte[] read(String path) throws IOException {
+            try (InputStream in = Sections.class.getResourceAsStream(BUNDLED + path)) {
+                return in != null ? in.readAllBytes() : null;
+            }
+        }
+
+        @Override
+        public String describe(String path) {
+            return "classpath:" + BUNDLED + path;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Раздаёт апдейты по рабочим потокам, сохраняя порядок внутри одного чата.
+ * <p>
+ * Режимы (UPDATE_DISPATCH_MODE):
+ * <ul>
+ *     <li>striped — фиксированный набор однопоточных исполнителей, чат закреплён за полосой по chatId;</li>
+ *     <li>virtual — своя последовательная очередь на чат поверх виртуальных потоков (JDK 21+).
+ *     На более старой JVM откатываемся на striped.</li>
+ * </ul>
+ */
+public class UpdateDispatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final ExecutorService[] stripes;
+    private final ExecutorService virtualExecutor;
+    private final ConcurrentHashMap<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+
+    public UpdateDispatcher(String mode, int stripeCount) {
+        ExecutorService virtual = "virtual".equalsIgnoreCase(mode) ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.virtualExecutor = virtual;
+            this.stripes = null;
+            log.info("Update dispatcher: virtual threads, per-chat ordering");
+        } else {
+            int n = Math.max(1, stripeCount);
+            this.virtualExecutor = null;
+            this.stripes = new ExecutorService[n];
+            for (int i = 0; i < n; i++) {
+                this.stripes[i] = Executors.newSingleThreadExecutor(OutboundQueue.namedThreads("update-" + i));
+            }
+            log.info("Update dispatcher: {} stripes", n);
+        }
+    }
+
+    public static UpdateDispatcher fromConfig() {
+        return new UpdateDispatcher(
+                Config.env("UPDATE_DISPATCH_MODE", "striped"),
+                (int) Config.envLong("UPDATE_THREADS", Runtime.getRuntime().availableProcessors() * 4L));
+    }
+
+    /**
+     * Выполнить задачу в очереди чата: задачи с одним chatId выполняются по порядку,
+     * с разными — параллельно.
+     */
+    public void submit(long chatId, Runnable task) {
+        if (stripes != null) {
+            stripes[stripeOf(chatId)].execute(() -> runQuietly(chatId, task));
+            return;
+        }
+        lanes.compute(chatId, (id, lane) -> {
+            if (lane == null) {
+                lane = new ChatLane(id);
+                lane.tasks.add(task);
+                virtualExecutor.execute(lane::drain);
+            } else {
+                lane.tasks.add(task);
+            }
+            return lane;
+        });
+    }
+
+    /**
+     * Чат, к которому относится апдейт; 0 — для апдейтов без чата.
+     */
+    public static long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        if (update.hasMyChatMember()) {
+            return update.getMyChatMember().getChat().getId();
+        }
+        return 0L;
+    }
+
+    private int stripeOf(long chatId) {
+        // перемешиваем биты, чтобы соседние id не собирались в одной полосе
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) stripes.length);
+    }
+
+    private static void runQuietly(long chatId, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Error handling update for chat {}", chatId, e);
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() через рефлексию: проект собирается под Java 17.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available on this JVM");
+            return null;
+        }
+    }
+
+    /**
+     * Дождаться апдейтов, принятых до {@link #close()}: их ответы должны успеть попасть в очередь доставки.
+     *
+     * @return true, если все обработаны до deadlineNanos (по System.nanoTime())
+     */
+    public boolean awaitTermination(long deadlineNanos) throws InterruptedException {
+        ExecutorService[] executors = stripes != null ? stripes : new ExecutorService[]{virtualExecutor};
+        for (ExecutorService executor : executors) {
+            if (!executor.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (stripes != null) {
+            for (ExecutorService stripe : stripes) {
+                stripe.shutdown();
+            }
+        } else {
+            virtualExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Последовательная очередь одного чата: пока она есть в карте, её разбирает ровно один поток.
+     */
+    private final class ChatLane {
+        final long chatId;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        ChatLane(long chatId) {
+            this.chatId = chatId;
+        }
+
+        void drain() {
+            while (true) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    ChatLane self = this;
+                    ChatLane left = lanes.computeIfPresent(chatId, (id, current) ->
+                            current == self && current.tasks.isEmpty() ? null : current);
+                    if (left != self) {
+                        return;
+                    }
+                    continue;
+                }
+                runQuietly(chatId, task);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.waterbot;
+
+import java.util.Arrays;
+
+/**
+ * Периодически сохраняет состояние {@link ProcessedUpdates} в bot_state — только если оно изменилось.
+ * <p>
+ * Время сохранения поэтому примерно равно времени последнего апдейта: по нему при старте видно,
+ * что апдейтов не было неделю и Telegram мог начать update_id заново.
+ * После падения повторно обработаются не больше апдейтов, чем пришло с последнего сохранения.
+ */
+public class UpdateOffsetSaver implements Runnable {
+
+    private final Database database;
+    private final ProcessedUpdates updates;
+    // под this: последнее сохранённое состояние
+    private long savedOffset;
+    private byte[] savedProcessed;
+
+    /**
+     * @param updates уже восстановленное из БД состояние: пока апдейтов нет, оно не перезаписывается
+     */
+    public UpdateOffsetSaver(Database database, ProcessedUpdates updates) {
+        this.database = database;
+        this.updates = updates;
+        ProcessedUpdates.Snapshot initial = updates.snapshot();
+        this.savedOffset = initial.committedOffset();
+        this.savedProcessed = initial.processed();
+    }
+
+    @Override
+    public synchronized void run() {
+        ProcessedUpdates.Snapshot snapshot = updates.snapshot();
+        if (snapshot.committedOffset() == savedOffset && Arrays.equals(snapshot.processed(), savedProcessed)) {
+            return;
+        }
+        database.saveUpdateState(snapshot.committedOffset(), snapshot.processed(), System.currentTimeMillis());
+        savedOffset = snapshot.committedOffset();
+        savedProcessed = snapshot.processed();
+    }
+}
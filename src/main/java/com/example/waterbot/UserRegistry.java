@@ -0,0 +1,76 @@
+package com.example.waterbot;
+
+import java.util.Arrays;
+
+/**
+ * Память о пользователях: chatId → время последнего /start.
+ * <p>
+ * Ограниченный по размеру кэш на примитивных массивах (без боксинга и узлов на запись):
+ * таблица разбита на наборы по WAYS ячеек, при переполнении набора вытесняется запись
+ * с самым старым /start. На миллион чатов уходит ~16 МБ.
+ */
+public class UserRegistry {
+
+    /** Значение "пользователь неизвестен реестру". */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final int WAYS = 8;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int LOCK_STRIPES = 64;
+
+    private final long[] keys;
+    private final long[] values;
+    private final int setMask;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public UserRegistry(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+        this.setMask = sets - 1;
+        this.keys = new long[sets * WAYS];
+        this.values = new long[sets * WAYS];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return время последнего /start или {@link #UNKNOWN}, если записи нет (или она вытеснена).
+     */
+    public long lastStartAt(long chatId) {
+        int set = setOf(chatId);
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int base = set * WAYS;
+            for (int i = base; i < base + WAYS; i++) {
+                if (keys[i] == chatId) {
+                    return values[i];
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public void recordStart(long chatId, long startAt) {
+        int set = setOf(chatId);
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int base = set * WAYS;
+            int victim = base;
+            for (int i = base; i < base + WAYS; i++) {
+                if (keys[i] == chatId || keys[i] == EMPTY) {
+                    victim = i;
+                    break;
+                }
+                if (values[i] < values[victim]) {
+                    victim = i;
+                }
+            }
+            keys[victim] = chatId;
+            values[victim] = startAt;
+        }
+    }
+
+    private int setOf(long chatId) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & setMask;
+    }
+}
@@ -2,63 +2,187 @@ package com.example.waterbot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.ParseMode;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
 import org.telegram.telegrambots.meta.api.objects.*;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaVideo;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WaterBot extends TelegramLongPollingBot {
 
     private static final Logger log = LoggerFactory.getLogger(WaterBot.class);
 
-    // лимиты Telegram
-    private static final int MAX_MESSAGE_LENGTH = 4000;  // 4096 - небольшой запас
-    private static final int MAX_CAPTION_LENGTH = 1024;
+    // ключ FloodGuard для текстовых сообщений (callback data так не называются)
+    private static final String FLOOD_TEXT = "#text";
 
-    // задержка между отправками сообщений (п.4 – ~2 секунды)
-    private static final long MESSAGE_DELAY_MS = 2000L;
+    // от получения апдейта до конца обработки, включая ожидание в очереди диспетчера
+    private static final Metrics.Histogram MESSAGE_LATENCY = updateLatency("message");
+    private static final Metrics.Histogram CALLBACK_LATENCY = updateLatency("callback");
+    private static final Metrics.Histogram OTHER_LATENCY = updateLatency("other");
 
-    // callback data
-    private static final String CB_FULL_CLEANSE = "MENU_10_FULL_CLEANSE";
-    private static final String CB_WATER_FACTS = "MENU_1_WATER_FACTS";
-    private static final String CB_46_REASONS = "MENU_2_46_REASONS";
-    private static final String CB_DEHYDRATION = "MENU_3_DEHYDRATION";
-    private static final String CB_QUALITY_FULL = "MENU_4_QUALITY_FULL";
-    private static final String CB_LIVE_WATER = "MENU_5_LIVE_WATER";
-    private static final String CB_PROMO = "MENU_6_PROMO";
-    private static final String CB_HEALTH_FORM = "MENU_8_HEALTH_FORM";
-    private static final String CB_CONSULTATION = "MENU_9_CONSULTATION";
-    private static final String CB_BACK_TO_MENU = "BACK_TO_MENU";
+    private static final ConcurrentHashMap<String, ApiMetrics> API_METRICS = new ConcurrentHashMap<>();
 
-    private static final String CORAL_URL_HTML =
-            "https://ru.coral.club/shop/koral-mayn-silver.html?offer=2200&amp;REF_CODE=365272872010";
+    private static final Metrics.Counter BLOCKED_BY_API = blocked("api_403");
+    private static final Metrics.Counter BLOCKED_BY_UPDATE = blocked("my_chat_member");
+    private static final Metrics.Counter UNBLOCKED = Metrics.counter("waterbot_chats_unblocked_total",
+            "Chats that allowed the bot to write again");
+    private static final Metrics.Counter ANSWERS_SKIPPED = Metrics.counter("waterbot_callback_answers_skipped_total",
+            "Callback query answers not sent because the global rate budget was exhausted");
+    private static final Metrics.Counter SUPERSEDED = Metrics.counter("waterbot_sections_superseded_total",
+            "Sections whose remaining steps were cancelled because the user opened another one");
 
+    // getBotToken() в библиотеке устарел: токен для своей сессии polling держим сами
+    private final String botToken;
     private final String botUsername;
     private final String mediaDir;
     private final Database database;
+    private final MediaCache mediaCache;
+    private final UserRegistry users;
+    private final SectionCatalog catalog;
+    private final OutboundQueue outbound;
+    private final OutboundJournal journal;
+    // раздел, который сейчас доставляется в чат (пока не выполнен или не отменён последний шаг)
+    private final ConcurrentHashMap<Long, ActiveSection> activeSections = new ConcurrentHashMap<>();
+    private final RateLimiter limiter;
+    private final UpdateDispatcher dispatcher;
+    private final ProcessedUpdates updates;
+    private final FloodGuard floodGuard;
     private final long callbackSpamIntervalMs;
-
-    public WaterBot(String botToken,
+    private final int textFloodLimit;
+    private final long textFloodWindowMs;
+    // команды рассылки принимаются только из чата администратора (см. enableBroadcast)
+    private volatile Broadcast broadcast;
+    private volatile long adminChatId;
+
+    public WaterBot(DefaultBotOptions options,
+                    String botToken,
                     String botUsername,
                     String mediaDir,
                     Database database,
-                    long callbackSpamIntervalMs) {
-        super(botToken);
+                    MediaCache mediaCache,
+                    UserRegistry users,
+                    SectionCatalog catalog,
+                    OutboundQueue outbound,
+                    OutboundJournal journal,
+                    RateLimiter limiter,
+                    UpdateDispatcher dispatcher,
+                    ProcessedUpdates updates,
+                    FloodGuard floodGuard,
+                    long callbackSpamIntervalMs,
+                    int textFloodLimit,
+                    long textFloodWindowMs) {
+        super(options, botToken);
+        this.botToken = botToken;
         this.botUsername = botUsername;
         this.mediaDir = mediaDir;
         this.database = database;
+        this.mediaCache = mediaCache;
+        this.users = users;
+        this.catalog = catalog;
+        this.outbound = outbound;
+        this.journal = journal;
+        this.limiter = limiter;
+        this.dispatcher = dispatcher;
+        this.updates = updates;
+        this.floodGuard = floodGuard;
         this.callbackSpamIntervalMs = callbackSpamIntervalMs;
+        this.textFloodLimit = textFloodLimit;
+        this.textFloodWindowMs = textFloodWindowMs;
+    }
+
+    /**
+     * telegrambots собирает HttpClient без maxConnPerRoute, и Apache HttpClient оставляет по умолчанию
+     * 2 соединения на хост: все отправки из очередей чатов шли через два сокета (видно в LoadTest).
+     * Подменяем клиент таким же, но с пулом на maxConnections соединений. С прокси не трогаем.
+     */
+    public void widenConnectionPool(int maxConnections) {
+        if (getOptions().getProxyType() != DefaultBotOptions.ProxyType.NO_PROXY) {
+            return;
+        }
+        CloseableHttpClient client = HttpClientBuilder.create()
+                .setSSLHostnameVerifier(new NoopHostnameVerifier())
+                .setConnectionTimeToLive(70, TimeUnit.SECONDS)
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .build();
+        try {
+            Field field = DefaultAbsSender.class.getDeclaredField("httpClient");
+            field.setAccessible(true);
+            field.set(this, client);
+            log.info("Bot API connection pool: {} connections", maxConnections);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Cannot widen the Bot API connection pool, keeping the library default", e);
+            try {
+                client.close();
+            } catch (IOException ignored) {
+                // клиент ещё не открыл ни одного соединения
+            }
+        }
+    }
+
+    /**
+     * Запустить long polling с подтверждённого смещения (то же, что TelegramBotsApi.registerBot, плюс смещение).
+     * <p>
+     * DefaultBotSession всегда начинает с offset=1 — Telegram отдаёт все неподтверждённые апдейты, включая уже
+     * обработанные до перезапуска. Стартовое смещение сессия хранит в закрытом поле lastReceivedUpdate
+     * (offset = оно + 1, апдейты с id не больше него отбрасываются), задаём его так же, как пул соединений.
+     * Не вышло — остаётся отсев повторов в {@link ProcessedUpdates}.
+     */
+    public BotSession startPolling() throws TelegramApiException {
+        onRegister();
+        clearWebhook();
+        DefaultBotSession session = new DefaultBotSession();
+        session.setToken(botToken);
+        session.setOptions(getOptions());
+        session.setCallback(this);
+        long offset = updates.committedOffset();
+        if (offset > 0 && offset <= Integer.MAX_VALUE) {
+            try {
+                Field field = DefaultBotSession.class.getDeclaredField("lastReceivedUpdate");
+                field.setAccessible(true);
+                field.setInt(session, (int) offset);
+                log.info("Long polling resumes after update_id {}", offset);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Cannot set the long polling offset, relying on update_id deduplication", e);
+            }
+        }
+        session.start();
+        return session;
+    }
+
+    /**
+     * Принимать команды рассылки (/broadcast ...) из чата администратора.
+     */
+    public void enableBroadcast(Broadcast broadcast, long adminChatId) {
+        this.adminChatId = adminChatId;
+        this.broadcast = broadcast;
     }
 
     @Override
@@ -66,64 +190,128 @@ public class WaterBot extends TelegramLongPollingBot {
         return botUsername;
     }
 
+    /**
+     * Вызывается потоком сессии: только передаём апдейт диспетчеру, сама обработка — в очереди чата.
+     * Повтор уже принятого update_id (webhook прислал ещё раз, getUpdates вернул его после перезапуска)
+     * отбрасывается сразу.
+     */
     @Override
     public void onUpdateReceived(Update update) {
+        long received = System.nanoTime();
+        Integer updateId = update.getUpdateId();
+        if (updateId != null && !updates.accept(updateId)) {
+            return;
+        }
+        dispatcher.submit(UpdateDispatcher.chatIdOf(update), () -> {
+            try {
+                handleUpdate(update, received);
+            } finally {
+                if (updateId != null) {
+                    updates.complete(updateId);
+                }
+            }
+        });
+    }
+
+    private void handleUpdate(Update update, long receivedNanos) {
+        Metrics.Histogram latency = OTHER_LATENCY;
         try {
             if (update.hasMessage()) {
+                latency = MESSAGE_LATENCY;
                 handleMessage(update.getMessage());
             } else if (update.hasCallbackQuery()) {
+                latency = CALLBACK_LATENCY;
                 handleCallback(update.getCallbackQuery());
+            } else if (update.hasMyChatMember()) {
+                handleMyChatMember(update.getMyChatMember());
             }
         } catch (Exception e) {
             log.error("Error handling update", e);
+        } finally {
+            latency.recordSince(receivedNanos);
         }
     }
 
-    private void handleMessage(Message message) throws TelegramApiException {
+    private void handleMessage(Message message) {
         if (!message.hasText()) {
             return;
         }
         String text = message.getText().trim();
         long chatId = message.getChatId();
 
+        // флуд текстом: каждое сообщение стоит ответа в очереди, поэтому лишние молча пропускаем
+        if (!floodGuard.tryAcquire(chatId, FLOOD_TEXT, textFloodLimit, textFloodWindowMs,
+                System.currentTimeMillis())) {
+            return;
+        }
+
+        Broadcast admin = broadcast;
+        if (admin != null && chatId == adminChatId && text.startsWith("/broadcast")) {
+            handleBroadcastCommand(admin, chatId, text);
+            return;
+        }
+
+        Sections sections = catalog.sections();
         if ("/start".equals(text)) {
             long now = System.currentTimeMillis();
-            boolean already = database.hasUserStarted(chatId);
-            Long lastStartAt = database.getLastStartAt(chatId);
-
-            database.saveStart(chatId, message.getFrom() != null ? message.getFrom().getUserName() : null);
+            String username = message.getFrom() != null ? message.getFrom().getUserName() : null;
+
+            // если пользователь есть в памяти — запись в БД уходит фоном, иначе один upsert вернёт прошлый /start
+            Long lastStartAt;
+            long cached = users.lastStartAt(chatId);
+            if (cached != UserRegistry.UNKNOWN) {
+                lastStartAt = cached;
+                database.saveStartAsync(chatId, username, now);
+            } else {
+                lastStartAt = database.saveStart(chatId, username, now);
+            }
+            users.recordStart(chatId, now);
 
             // первый /start
-            if (!already || lastStartAt == null) {
-                sendStartFirstTime(chatId);
+            if (lastStartAt == null) {
+                openSection(chatId, sections.start());
                 return;
             }
 
             // если второй /start прилетел сразу же (двойной старт кнопкой) — игнорируем
-            if (lastStartAt != null && now - lastStartAt < 2000) {
+            if (now - lastStartAt < 2000) {
                 return;
             }
 
             // обычный повторный /start
-            sendStartAgain(chatId);
+            openSection(chatId, sections.start());
         } else {
             // любое другое сообщение — просто покажем меню
-            SendMessage msg = new SendMessage();
-            msg.setChatId(Long.toString(chatId));
-            msg.setText("Пожалуйста, воспользуйтесь меню ниже 👇");
-            msg.setReplyMarkup(mainMenuKeyboard());
-            safeExecute(msg);
+            deliver(chatId, sections.menuHint());
         }
     }
 
-    private void handleCallback(CallbackQuery callbackQuery) throws TelegramApiException {
+    /**
+     * /broadcast &lt;раздел&gt; | /broadcast_pause | /broadcast_resume | /broadcast_status
+     */
+    private void handleBroadcastCommand(Broadcast admin, long chatId, String text) {
+        String[] parts = text.split("\\s+", 2);
+        String reply = switch (parts[0]) {
+            case "/broadcast" -> parts.length > 1
+                    ? admin.start(parts[1].trim())
+                    : "Использование: /broadcast <id раздела из sections.json>";
+            case "/broadcast_pause" -> admin.pause(stopped -> deliver(chatId,
+                    SectionPlan.builder("admin").plainText(stopped, null).build()));
+            case "/broadcast_resume" -> admin.resume();
+            case "/broadcast_status" -> admin.status();
+            default -> "Команды: /broadcast <раздел>, /broadcast_pause, /broadcast_resume, /broadcast_status";
+        };
+        deliver(chatId, SectionPlan.builder("admin").plainText(reply, null).build());
+    }
+
+    private void handleCallback(CallbackQuery callbackQuery) {
         String data = callbackQuery.getData();
         long chatId = callbackQuery.getMessage().getChatId();
         String callbackId = callbackQuery.getId();
         long now = System.currentTimeMillis();
 
-        // антиспам по коллбэкам
-        if (database.isCallbackSpam(chatId, data, now, callbackSpamIntervalMs)) {
+        // антиспам по коллбэкам: не чаще одного нажатия одной кнопки за интервал
+        if (!floodGuard.tryAcquire(chatId, data, 1, callbackSpamIntervalMs, now)) {
             AnswerCallbackQuery answer = new AnswerCallbackQuery();
             answer.setCallbackQueryId(callbackId);
             answer.setText("Пожалуйста, не нажимайте так часто 🙂");
@@ -140,528 +328,490 @@ public class WaterBot extends TelegramLongPollingBot {
         answer.setShowAlert(false);
         safeExecute(answer);
 
-        switch (data) {
-            case CB_WATER_FACTS -> sendWaterFacts(chatId);
-            case CB_46_REASONS -> send46Reasons(chatId);
-            case CB_DEHYDRATION -> sendDehydration(chatId);
-            case CB_QUALITY_FULL -> sendQualityFull(chatId);
-            case CB_LIVE_WATER -> sendLiveWater(chatId);
-            case CB_PROMO -> sendPromo(chatId);
-            case CB_HEALTH_FORM -> sendHealthForm(chatId);
-            case CB_CONSULTATION -> sendConsultation(chatId);
-            case CB_FULL_CLEANSE -> sendFullCleanse(chatId);
-            case CB_BACK_TO_MENU -> sendMainMenu(chatId);
-            default -> {
-                SendMessage msg = new SendMessage();
-                msg.setChatId(Long.toString(chatId));
-                msg.setText("Неизвестная команда. Показываю меню 👇");
-                msg.setReplyMarkup(mainMenuKeyboard());
-                safeExecute(msg);
-            }
+        Sections sections = catalog.sections();
+        SectionPlan plan = sections.byCallback(data);
+        if (plan != null) {
+            openSection(chatId, plan);
+        } else {
+            deliver(chatId, sections.unknownCommand());
         }
     }
 
-    private void sendFullCleanse(long chatId) throws TelegramApiException {
-        // одно видео + ваш текст + кнопка "Домик"
-        sendVideo(chatId, "41.MP4", Content.FULL_CLEANSE_TEXT, true);
-    }
-
-    // ------------- /start -------------
-
-    private void sendStartFirstTime(long chatId) throws TelegramApiException {
-        // ОДНО сообщение: фото 1.jpg + приветственный текст + главное меню
-        String fileName = "1.jpg";
-        String cacheKey = "photo:" + fileName;
-
-        SendPhoto photo = new SendPhoto();
-        photo.setChatId(Long.toString(chatId));
-        photo.setCaption(Content.START_TEXT);
-        photo.setParseMode(ParseMode.HTML);
-        photo.setReplyMarkup(mainMenuKeyboard());
-
-        String cachedId = database.getMediaFileId(cacheKey);
-        if (cachedId != null) {
-            photo.setPhoto(new InputFile(cachedId));
-            safeExecute(photo);
-            return;
-        }
-
-        File file = new File(mediaDir, fileName);
-        photo.setPhoto(new InputFile(file));
-        Message msg = safeExecute(photo);
-        if (msg != null && msg.getPhoto() != null && !msg.getPhoto().isEmpty()) {
-            PhotoSize best = msg.getPhoto().get(msg.getPhoto().size() - 1);
-            database.saveMediaFileId(cacheKey, best.getFileId());
+    /**
+     * Статус бота в чате изменился: в личке "kicked" — пользователь заблокировал бота, "member" — разблокировал.
+     */
+    private void handleMyChatMember(ChatMemberUpdated update) {
+        long chatId = update.getChat().getId();
+        String status = update.getNewChatMember().getStatus();
+        switch (status) {
+            case "kicked", "left" -> chatBlocked(chatId, BLOCKED_BY_UPDATE);
+            case "member", "administrator" -> {
+                database.setBlocked(chatId, false);
+                UNBLOCKED.inc();
+                log.info("Chat {} unblocked the bot", chatId);
+            }
+            default -> log.debug("Chat {}: bot status {}", chatId, status);
         }
     }
 
-    private void sendStartAgain(long chatId) throws TelegramApiException {
-        sendStartFirstTime(chatId);
-    }
-
-    private void sendMainMenu(long chatId) throws TelegramApiException {
-        sendStartFirstTime(chatId);
-    }
-
-    private InlineKeyboardMarkup mainMenuKeyboard() {
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-
-        rows.add(singleButtonRow("💧 Вода. Интересные факты", CB_WATER_FACTS));
-        rows.add(singleButtonRow("📋 46 причин пить воду", CB_46_REASONS));
-        rows.add(singleButtonRow("🤒 Болезни обезвоживания", CB_DEHYDRATION));
-        rows.add(singleButtonRow("🧪 Качество воды", CB_QUALITY_FULL));
-        rows.add(singleButtonRow("🌿 Живая щелочная вода", CB_LIVE_WATER));
-        rows.add(singleButtonRow("🎁 Промокод на 20%", CB_PROMO));
-        rows.add(singleButtonRow("📊 Анкета по здоровью", CB_HEALTH_FORM));
-        rows.add(singleButtonRow("📞 Записаться на консультацию", CB_CONSULTATION));
-
-        // новая последняя кнопка раздела
-        rows.add(singleButtonRow("Полное очищение организма", CB_FULL_CLEANSE));
-
-        // последняя кнопка – переход в Telegram-канал
-        InlineKeyboardButton channelButton = new InlineKeyboardButton();
-        channelButton.setText("Мой TELEGRAM канал");
-        channelButton.setUrl("https://t.me/+WKM0rsm0G9RkOTMy");
-        List<InlineKeyboardButton> channelRow = new ArrayList<>();
-        channelRow.add(channelButton);
-        rows.add(channelRow);
-
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        markup.setKeyboard(rows);
-        return markup;
-    }
-
-    private List<InlineKeyboardButton> singleButtonRow(String text, String data) {
-        List<InlineKeyboardButton> row = new ArrayList<>();
-        InlineKeyboardButton b = new InlineKeyboardButton();
-        b.setText(text);
-        b.setCallbackData(data);
-        row.add(b);
-        return row;
-    }
-
-    private InlineKeyboardMarkup backToMenuKeyboard() {
-        InlineKeyboardButton back = new InlineKeyboardButton();
-        back.setText("🏠 Вернуться в меню");
-        back.setCallbackData(CB_BACK_TO_MENU);
-
-        List<InlineKeyboardButton> row = new ArrayList<>();
-        row.add(back);
-
-        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(row);
-
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        markup.setKeyboard(rows);
-        return markup;
-    }
-
-    // ------------- Обработчики разделов -------------
-
-    private void sendWaterFacts(long chatId) throws TelegramApiException {
-        // (2.jpg) + текст
-        sendPhoto(chatId, "2.jpg", Content.WATER_FACTS_1, false);
-
-        // (1.mp4) + текст
-        sendVideo(chatId, "1.MP4", Content.WATER_FACTS_BLOOD_VIDEO_TEXT, false);
-
-        // (3.jpg) + текст
-        sendPhoto(chatId, "3.jpg", Content.WATER_FACTS_2, false);
-
-        // (2.mp4) + текст
-        sendVideo(chatId, "2.MP4", Content.WATER_FACTS_3_VIDEO_TEXT, false);
-
-        // (4.mp4) без текста, с кнопкой "Домик"
-        sendVideo(chatId, "4.MP4", null, true);
-    }
-
-    private void send46Reasons(long chatId) throws TelegramApiException {
-        // Фото + большой текст (если не влезет в caption — остальное уйдёт в отдельные сообщения)
-        sendPhoto(chatId, "4.jpg", Content.REASONS_46_TEXT, true);
-    }
-
-    private void sendDehydration(long chatId) throws TelegramApiException {
-        // (5.mp4) + большой текст
-        sendVideo(chatId, "5.MP4", Content.DEHYDRATION_DISEASES_VIDEO_5_TEXT, false);
-
-        // (6.mp4) + текст
-        sendVideo(chatId, "6.MP4", Content.DEHYDRATION_DISEASES_VIDEO_6_TEXT, false);
-
-        // (5.jpg) + "Пройдите тест"
-        sendPhoto(chatId, "5.jpg", Content.DEHYDRATION_DISEASES_QUIZ_TEXT, false);
-
-        // (7.mp4) + кнопка "Домик"
-        sendVideo(chatId, "7.MP4", null, true);
-    }
-
-    private void sendQualityFull(long chatId) throws TelegramApiException {
-        // Вступительный текст
-        sendText(chatId, Content.QUALITY_INTRO, false);
-
-        // (6.jpg) + 6 параметров
-        sendPhoto(chatId, "6.jpg", Content.QUALITY_6_PARAMS, false);
-
-        // (8.mp4) + про воду из-под крана
-        sendVideo(chatId, "8.MP4", Content.QUALITY_TAP_WATER_TEXT, false);
-
-        // Следующее сообщение (только текст)
-        sendText(chatId, Content.QUALITY_NEXT_1, false);
-
-        // (7.jpg) + про кипячёную воду
-        sendPhoto(chatId, "7.jpg", Content.QUALITY_KETTLE_TEXT, false);
-
-        // (8.jpg) + про воду в бутылках
-        sendPhoto(chatId, "8.jpg", Content.QUALITY_BOTTLED_TEXT, false);
-
-        // Следующее сообщение (только текст)
-        sendText(chatId, Content.QUALITY_NEXT_2, false);
-
-        // (9.jpg) + текучесть
-        sendPhoto(chatId, "9.jpg", Content.QUALITY_SURFACE_TENSION_TEXT, false);
-
-        // (10.jpg) + примеры натяжения
-        sendPhoto(chatId, "10.jpg", Content.QUALITY_SURFACE_TENSION_EXAMPLES, false);
-
-        // (11.jpg) + структура и память
-        sendPhoto(chatId, "11.jpg", Content.QUALITY_STRUCTURE_TEXT, false);
-
-        // Следующее сообщение (только текст)
-        sendText(chatId, Content.QUALITY_NEXT_3, false);
-
-        // (9.mp4) + текст про фильм
-        sendVideo(chatId, "9.MP4", Content.QUALITY_VIDEO_9_TEXT, false);
-
-        // Следующее сообщение (только текст)
-        sendText(chatId, Content.QUALITY_NEXT_4, false);
-
-        // (12.jpg) + минерализация
-        sendPhoto(chatId, "12.jpg", Content.QUALITY_MINERALIZATION_TEXT, false);
-
-        // (13.jpg) + pH
-        sendPhoto(chatId, "13.jpg", Content.QUALITY_PH_TEXT, false);
-
-        // (14.jpg) — просто картинка pH без текста
-        sendPhoto(chatId, "14.jpg", null, false);
-
-        // (15.jpg) + ОВП
-        sendPhoto(chatId, "15.jpg", Content.QUALITY_OVP_TEXT, false);
-
-        // (10.mp4), (11.mp4)
-        sendVideo(chatId, "10.MP4", null, false);
-        sendVideo(chatId, "11.MP4", null, false);
-
-        // ИНФО ПРО ЕССЕНТУКИ – КАК ПОСЛЕДНЕЕ СООБЩЕНИЕ С КНОПКОЙ "ВЕРНУТЬСЯ В МЕНЮ" (п.1)
-        sendVideo(chatId, "14.MP4", Content.QUALITY_SHORT_ESSE_TEXT, true);
+    /**
+     * Писать в чат больше нельзя: помечаем пользователя и выбрасываем всё, что для него стоит в очереди.
+     */
+    private void chatBlocked(long chatId, Metrics.Counter source) {
+        database.setBlocked(chatId, true);
+        outbound.purge(chatId);
+        source.inc();
+        log.info("Chat {} blocked the bot, queued messages dropped", chatId);
     }
 
-    private void sendLiveWater(long chatId) throws TelegramApiException {
-        // HTML-текст, где каждое слово "вода" кликабельно и ведёт на нужный URL
-        String html = linkifyWater(Content.LIVE_WATER_CORAL_MAIN_TEXT);
-
-        // (16.jpg) + HTML-текст (с <b> и <a>)
-        sendPhotoHtml(chatId, "16.jpg", html, false);
+    // ------------- Доставка (выполняется в очереди чата, см. OutboundQueue) -------------
 
-        // Отдельным сообщением даём ссылку на видео
-        SendMessage linkMsg = new SendMessage();
-        linkMsg.setChatId(Long.toString(chatId));
-        linkMsg.setText("Вода японских долгожителей:\nhttps://youtu.be/pO19EG5_fb0?si=IcPR4jQfRb8MQAx5");
-        safeExecute(linkMsg);
-
-        // (12.MP4) + текст про соду, БЕЗ кнопки "Домик"
-        sendVideo(chatId, "12.MP4", Content.LIVE_WATER_SODA_VIDEO_TEXT, false);
-
-        // ПОСЛЕДНИМ сообщением — (40.MP4) + кнопка "Домик"
-        sendVideo(chatId, "40.MP4", null, true);
+    /**
+     * Пользователь открыл раздел (кнопкой или /start): недоставленный остаток предыдущего раздела
+     * отменяется, если тот это допускает (см. interruptible).
+     */
+    private void openSection(long chatId, SectionPlan plan) {
+        enqueuePlan(chatId, plan, true);
     }
 
-    private void sendPromo(long chatId) throws TelegramApiException {
-        // (17.jpg) + текст + кнопка "Домик"
-        sendPhoto(chatId, "17.jpg", Content.PROMO_TEXT, true);
+    /**
+     * Ответ, который встаёт в очередь после текущего раздела, не отменяя его (подсказка меню, служебные ответы).
+     */
+    private void deliver(long chatId, SectionPlan plan) {
+        enqueuePlan(chatId, plan, false);
     }
 
-    private void sendHealthForm(long chatId) throws TelegramApiException {
-        SendMessage msg = new SendMessage();
-        msg.setChatId(Long.toString(chatId));
-        msg.setText(Content.HEALTH_FORM_TEXT);
-        msg.setReplyMarkup(backToMenuKeyboard());
-        safeExecute(msg);
+    /**
+     * Поставить шаги плана в очередь чата; запросы к API собираются уже при доставке.
+     * Шаги разделов из манифеста пишутся в журнал, чтобы после перезапуска раздел дошёл до конца.
+     *
+     * @param supersede true — план становится текущим разделом чата и отменяет остаток прежнего
+     */
+    private void enqueuePlan(long chatId, SectionPlan plan, boolean supersede) {
+        // по id после перезапуска находятся только разделы текущего манифеста (не служебные ответы)
+        boolean journaled = catalog.sections().section(plan.id()) == plan;
+        List<SectionPlan.Step> steps = plan.steps();
+        if (steps.isEmpty()) {
+            return;
+        }
+        // ответ, не отменяющий текущий раздел, и сам им не становится: следующее нажатие отменит прежний раздел
+        ActiveSection active = supersede ? new ActiveSection(chatId, plan, steps.size()) : null;
+        if (active != null) {
+            supersede(active);
+        }
+        OutboundQueue.Session session = active != null ? active.session : null;
+        for (int i = 0; i < steps.size(); i++) {
+            SectionPlan.Step step = steps.get(i);
+            Runnable send = () -> sendStep(chatId, step);
+            if (journaled) {
+                long seq = journal.append(chatId, plan.id(), plan.fingerprint(), i);
+                outbound.enqueue(chatId, send, () -> {
+                    journal.ack(seq);
+                    if (active != null) {
+                        active.stepDone();
+                    }
+                }, session);
+            } else {
+                outbound.enqueue(chatId, send, active != null ? active::stepDone : null, session);
+            }
+        }
     }
 
-    private void sendConsultation(long chatId) throws TelegramApiException {
-        SendMessage msg = new SendMessage();
-        msg.setChatId(Long.toString(chatId));
-        msg.setText(Content.CONSULTATION_TEXT);
-        msg.setReplyMarkup(backToMenuKeyboard());
-        safeExecute(msg);
+    /**
+     * Сделать раздел текущим в чате, отменив остаток прежнего. Вызывается из обработки апдейтов,
+     * которая для одного чата идёт по порядку.
+     */
+    private void supersede(ActiveSection active) {
+        ActiveSection previous = activeSections.put(active.chatId, active);
+        if (previous != null && previous.plan.interruptible() && !previous.session.isCancelled()) {
+            previous.session.cancel();
+            SUPERSEDED.inc();
+            log.debug("Chat {}: section {} superseded by {}", active.chatId, previous.plan.id(), active.plan.id());
+        }
     }
 
-    // ------------- Утилиты отправки -------------
-
     /**
-     * Отправка обычного текста с автосплитом по лимиту Telegram.
-     * Кнопка "Домик" ставится только на последнем сообщении.
+     * Доставить шаги, не выполненные до остановки или падения процесса, — до начала приёма апдейтов,
+     * чтобы они шли раньше новых ответов. Шаг, для которого раздела больше нет или раздел с тех пор изменился
+     * (другой отпечаток плана — номер шага указывает уже на другое содержимое), подтверждается без отправки.
+     *
+     * @return сколько шагов поставлено в очереди
      */
-    private void sendText(long chatId, String text, boolean backButton) throws TelegramApiException {
-        if (text == null || text.isBlank()) return;
-
-        int length = text.length();
-        int offset = 0;
-        while (offset < length) {
-            int end = Math.min(length, offset + MAX_MESSAGE_LENGTH);
-            if (end < length) {
-                // стараемся резать по переводу строки или пробелу
-                int lastNewLine = text.lastIndexOf('\n', end);
-                int lastSpace = text.lastIndexOf(' ', end);
-                int split = Math.max(lastNewLine, lastSpace);
-                if (split <= offset) {
-                    split = end;
-                }
-                end = split;
+    public int resumeJournal() {
+        Sections sections = catalog.sections();
+        // идущие подряд шаги одного раздела в чате — один раздел: новое нажатие отменит его остаток
+        List<List<OutboundJournal.PendingStep>> runs = new ArrayList<>();
+        Map<Long, List<OutboundJournal.PendingStep>> lastRun = new HashMap<>();
+        int stale = 0;
+        for (OutboundJournal.PendingStep pending : journal.recovered()) {
+            SectionPlan plan = sections.section(pending.planId());
+            if (plan == null || plan.fingerprint() != pending.planFingerprint()
+                    || pending.stepIndex() >= plan.steps().size()) {
+                journal.ack(pending.seq());
+                stale++;
+                continue;
             }
-
-            String chunk = text.substring(offset, end).trim();
-            if (!chunk.isEmpty()) {
-                SendMessage msg = new SendMessage();
-                msg.setChatId(Long.toString(chatId));
-                msg.setText(chunk);
-                msg.setParseMode(ParseMode.HTML);
-                // кнопку "Домик" вешаем только на последнюю часть
-                if (backButton && end >= length) {
-                    msg.setReplyMarkup(backToMenuKeyboard());
-                }
-                safeExecute(msg);
+            List<OutboundJournal.PendingStep> run = lastRun.get(pending.chatId());
+            if (run == null || !run.get(0).planId().equals(pending.planId())) {
+                run = new ArrayList<>();
+                runs.add(run);
+                lastRun.put(pending.chatId(), run);
             }
-            offset = end;
+            run.add(pending);
         }
-    }
-
-    private void sendHtmlText(long chatId, String html, boolean backButton) throws TelegramApiException {
-        if (html == null || html.isBlank()) return;
-
-        int length = html.length();
-        int offset = 0;
-        while (offset < length) {
-            int end = Math.min(length, offset + MAX_MESSAGE_LENGTH);
-            if (end < length) {
-                int lastNewLine = html.lastIndexOf('\n', end);
-                int lastSpace = html.lastIndexOf(' ', end);
-                int split = Math.max(lastNewLine, lastSpace);
-                if (split <= offset) {
-                    split = end;
-                }
-                end = split;
+        int resumed = 0;
+        for (List<OutboundJournal.PendingStep> run : runs) {
+            long chatId = run.get(0).chatId();
+            SectionPlan plan = sections.section(run.get(0).planId());
+            ActiveSection active = new ActiveSection(chatId, plan, run.size());
+            supersede(active);
+            for (OutboundJournal.PendingStep pending : run) {
+                SectionPlan.Step step = plan.steps().get(pending.stepIndex());
+                outbound.enqueue(chatId, () -> sendStep(chatId, step), () -> {
+                    journal.ack(pending.seq());
+                    active.stepDone();
+                }, active.session);
+                resumed++;
             }
-
-            String chunk = html.substring(offset, end).trim();
-            if (!chunk.isEmpty()) {
-                SendMessage msg = new SendMessage();
-                msg.setChatId(Long.toString(chatId));
-                msg.setText(chunk);
-                msg.setParseMode(ParseMode.HTML);
-                if (backButton && end >= length) {
-                    msg.setReplyMarkup(backToMenuKeyboard());
-                }
-                safeExecute(msg);
-            }
-            offset = end;
         }
+        if (stale > 0) {
+            log.info("Dropped {} journaled steps of sections that changed or disappeared since they were queued",
+                    stale);
+        }
+        return resumed;
     }
 
     /**
-     * Фото + caption (обычный текст) с кэшированием file_id.
-     * Если caption длинный — первая часть идёт в caption, остальное отдельными сообщениями.
+     * То же, но onDone вызывается после последнего шага (даже если он не удался и повторы исчерпаны).
+     * Без журнала: рассылка сама возобновляется со своей точки сохранения.
+     * Шаги идут в бюджете рассылки (RATE_BROADCAST_PER_SEC), чтобы не вытеснять ответы на нажатия.
      */
-    private void sendPhoto(long chatId, String fileName, String caption, boolean backButton) throws TelegramApiException {
-        sendPhotoInternal(chatId, fileName, caption, backButton, false);
+    public void deliver(long chatId, SectionPlan plan, Runnable onDone) {
+        List<SectionPlan.Step> steps = plan.steps();
+        if (steps.isEmpty()) {
+            onDone.run();
+            return;
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            SectionPlan.Step step = steps.get(i);
+            if (i < steps.size() - 1) {
+                outbound.enqueueBulk(chatId, () -> sendStep(chatId, step), null);
+            } else {
+                outbound.enqueueBulk(chatId, () -> sendStep(chatId, step), onDone);
+            }
+        }
     }
 
     /**
-     * Фото + caption как HTML (для блока с "водой" + ссылками).
+     * Шаг из очереди чата; 403 на любом запросе шага значит, что чат недоступен.
      */
-    private void sendPhotoHtml(long chatId, String fileName, String htmlCaption, boolean backButton) throws TelegramApiException {
-        sendPhotoInternal(chatId, fileName, htmlCaption, backButton, true);
-    }
-
-    private void sendPhotoInternal(long chatId,
-                                   String fileName,
-                                   String caption,
-                                   boolean backButton,
-                                   boolean html) throws TelegramApiException {
-        String cacheKey = "photo:" + fileName;
-
-        String captionFirst = null;
-        String captionRest = null;
-        if (caption != null && !caption.isBlank()) {
-            if (caption.length() <= MAX_CAPTION_LENGTH) {
-                captionFirst = caption;
-            } else {
-                int end = Math.min(caption.length(), MAX_CAPTION_LENGTH);
-                int lastNewLine = caption.lastIndexOf('\n', end);
-                int lastSpace = caption.lastIndexOf(' ', end);
-                int split = Math.max(lastNewLine, lastSpace);
-                if (split <= 0) {
-                    split = end;
-                }
-                captionFirst = caption.substring(0, split).trim();
-                captionRest = caption.substring(split).trim();
-            }
+    private void sendStep(long chatId, SectionPlan.Step step) {
+        try {
+            deliverStep(chatId, step);
+        } catch (ChatForbidden e) {
+            chatBlocked(chatId, BLOCKED_BY_API);
         }
+    }
 
-        SendPhoto photo = new SendPhoto();
-        photo.setChatId(Long.toString(chatId));
-        if (captionFirst != null && !captionFirst.isBlank()) {
-            photo.setCaption(captionFirst);
-            photo.setParseMode(ParseMode.HTML);
+    private void deliverStep(long chatId, SectionPlan.Step step) {
+        if (step instanceof SectionPlan.Text text) {
+            SendMessage msg = new SendMessage();
+            msg.setChatId(Long.toString(chatId));
+            msg.setText(text.text());
+            msg.setParseMode(text.parseMode());
+            msg.setReplyMarkup(text.keyboard());
+            safeExecute(msg);
+        } else if (step instanceof SectionPlan.Photo media) {
+            SendPhoto photo = new SendPhoto();
+            photo.setChatId(Long.toString(chatId));
+            if (media.caption() != null) {
+                photo.setCaption(media.caption());
+                photo.setParseMode(ParseMode.HTML);
+            }
+            photo.setReplyMarkup(media.keyboard());
+            deliverPhoto(photo, media.fileName());
+        } else if (step instanceof SectionPlan.Video media) {
+            SendVideo video = new SendVideo();
+            video.setChatId(Long.toString(chatId));
+            if (media.caption() != null) {
+                video.setCaption(media.caption());
+                video.setParseMode(ParseMode.HTML);
+            }
+            video.setReplyMarkup(media.keyboard());
+            deliverVideo(video, media.fileName());
+        } else if (step instanceof SectionPlan.Album album) {
+            deliverAlbum(chatId, album);
         }
+    }
+
+    /**
+     * Альбом одним sendMediaGroup: закэшированные элементы идут по file_id, остальные загружаются
+     * в том же запросе, и их file_id берутся из ответа. Если от альбома остался один элемент
+     * (остальных файлов нет на диске), он уходит обычным сообщением.
+     */
+    private void deliverAlbum(long chatId, SectionPlan.Album album) {
+        List<SectionPlan.Step> items = new ArrayList<>(album.items().size());
+        List<InputMedia> medias = new ArrayList<>(album.items().size());
+        List<String> uploads = new ArrayList<>(album.items().size());
+        for (SectionPlan.Step item : album.items()) {
+            boolean isPhoto = item instanceof SectionPlan.Photo;
+            String fileName = isPhoto ? ((SectionPlan.Photo) item).fileName() : ((SectionPlan.Video) item).fileName();
+            String caption = isPhoto ? ((SectionPlan.Photo) item).caption() : ((SectionPlan.Video) item).caption();
+            String mediaKey = isPhoto ? MediaCache.photoKey(fileName) : MediaCache.videoKey(fileName);
+            String cacheKey = catalog.media().contentKey(mediaKey);
+            if (cacheKey == null) {
+                log.warn("Media file {} is missing in {}, album item skipped", fileName, mediaDir);
+                continue;
+            }
 
-        // Кнопку "Домик" на фото ставим только если НЕТ остатка текста
-        if (backButton && (captionRest == null || captionRest.isBlank())) {
-            photo.setReplyMarkup(backToMenuKeyboard());
+            InputMedia media = isPhoto ? new InputMediaPhoto() : new InputMediaVideo();
+            String cachedId = mediaCache.get(cacheKey);
+            if (cachedId != null) {
+                media.setMedia(cachedId);
+                uploads.add(null);
+            } else {
+                // имя вложения должно быть уникальным внутри запроса
+                media.setMedia(new File(mediaDir, fileName), medias.size() + "_" + fileName);
+                uploads.add(cacheKey);
+            }
+            if (caption != null) {
+                media.setCaption(caption);
+                media.setParseMode(ParseMode.HTML);
+            }
+            items.add(item);
+            medias.add(media);
         }
 
-        // 1. Пробуем отправить по file_id из кэша
-        String cachedId = database.getMediaFileId(cacheKey);
-        if (cachedId != null) {
-            photo.setPhoto(new InputFile(cachedId));
-            safeExecute(photo);
-        } else {
-            // 2. Отправляем файл с диска, сохраняем file_id
-            File file = new File(mediaDir, fileName);
-            photo.setPhoto(new InputFile(file));
-
-            Message msg = safeExecute(photo);
-            if (msg != null && msg.getPhoto() != null && !msg.getPhoto().isEmpty()) {
-                PhotoSize best = msg.getPhoto().get(msg.getPhoto().size() - 1);
-                String newFileId = best.getFileId();
-                database.saveMediaFileId(cacheKey, newFileId);
+        if (medias.size() < 2) {
+            if (!items.isEmpty()) {
+                deliverStep(chatId, items.get(0));
             }
+            return;
         }
 
-        // Если текст не влез в caption — отправляем остаток как обычный (или HTML) текст
-        if (captionRest != null && !captionRest.isBlank()) {
-            if (html) {
-                sendHtmlText(chatId, captionRest, backButton);
-            } else {
-                sendText(chatId, captionRest, backButton);
+        SendMediaGroup group = new SendMediaGroup();
+        group.setChatId(Long.toString(chatId));
+        group.setMedias(medias);
+        List<Message> sent = safeExecute(group);
+        if (sent == null) {
+            return;
+        }
+        for (int i = 0; i < uploads.size() && i < sent.size(); i++) {
+            String fileId = uploads.get(i) != null ? MediaCache.fileIdOf(sent.get(i)) : null;
+            if (fileId != null) {
+                mediaCache.put(uploads.get(i), fileId);
             }
         }
     }
 
     /**
-     * Видео + caption (обычный текст) с кэшированием file_id.
-     * Если caption длинный — остаток текста уйдёт отдельным сообщением.
+     * Отправка фото: file_id из кэша смотрим в момент доставки,
+     * чтобы повторы одного файла в очереди уже шли по кэшу.
      */
-    private void sendVideo(long chatId, String fileName, String caption, boolean backButton) throws TelegramApiException {
-        String cacheKey = "video:" + fileName;
-
-        String captionFirst = null;
-        String captionRest = null;
-        if (caption != null && !caption.isBlank()) {
-            if (caption.length() <= MAX_CAPTION_LENGTH) {
-                captionFirst = caption;
-            } else {
-                int end = Math.min(caption.length(), MAX_CAPTION_LENGTH);
-                int lastNewLine = caption.lastIndexOf('\n', end);
-                int lastSpace = caption.lastIndexOf(' ', end);
-                int split = Math.max(lastNewLine, lastSpace);
-                if (split <= 0) {
-                    split = end;
-                }
-                captionFirst = caption.substring(0, split).trim();
-                captionRest = caption.substring(split).trim();
-            }
+    private void deliverPhoto(SendPhoto photo, String fileName) {
+        String cacheKey = catalog.media().contentKey(MediaCache.photoKey(fileName));
+        if (cacheKey == null) {
+            log.warn("Media file {} is missing in {}, photo skipped", fileName, mediaDir);
+            return;
         }
 
-        SendVideo video = new SendVideo();
-        video.setChatId(Long.toString(chatId));
-        if (captionFirst != null && !captionFirst.isBlank()) {
-            video.setCaption(captionFirst);
+        // 1. Пробуем отправить по file_id из кэша
+        String cachedId = mediaCache.get(cacheKey);
+        if (cachedId != null) {
+            photo.setPhoto(new InputFile(cachedId));
+            safeExecute(photo);
+            return;
         }
 
-        video.setParseMode(ParseMode.HTML);
+        // 2. Отправляем файл с диска, сохраняем file_id
+        photo.setPhoto(new InputFile(new File(mediaDir, fileName)));
+        String fileId = MediaCache.fileIdOf(safeExecute(photo));
+        if (fileId != null) {
+            mediaCache.put(cacheKey, fileId);
+        }
+    }
 
-        // Кнопку "Домик" на видео ставим только если НЕТ остатка текста
-        if (backButton && (captionRest == null || captionRest.isBlank())) {
-            video.setReplyMarkup(backToMenuKeyboard());
+    private void deliverVideo(SendVideo video, String fileName) {
+        String cacheKey = catalog.media().contentKey(MediaCache.videoKey(fileName));
+        if (cacheKey == null) {
+            log.warn("Media file {} is missing in {}, video skipped", fileName, mediaDir);
+            return;
         }
 
         // 1. Пробуем отправить по file_id
-        String cachedId = database.getMediaFileId(cacheKey);
+        String cachedId = mediaCache.get(cacheKey);
         if (cachedId != null) {
             video.setVideo(new InputFile(cachedId));
             safeExecute(video);
-        } else {
-            // 2. Отправляем файл с диска, кэшируем file_id
-            File file = new File(mediaDir, fileName);
-            video.setVideo(new InputFile(file));
-
-            Message msg = safeExecute(video);
-            if (msg != null && msg.getVideo() != null) {
-                String newFileId = msg.getVideo().getFileId();
-                database.saveMediaFileId(cacheKey, newFileId);
-            }
+            return;
         }
 
-        if (captionRest != null && !captionRest.isBlank()) {
-            // остаток текста — отдельными сообщениями
-            sendText(chatId, captionRest, backButton);
+        // 2. Отправляем файл с диска, кэшируем file_id
+        video.setVideo(new InputFile(new File(mediaDir, fileName)));
+        String fileId = MediaCache.fileIdOf(safeExecute(video));
+        if (fileId != null) {
+            mediaCache.put(cacheKey, fileId);
         }
     }
 
-    private String linkifyWater(String text) {
-        // заменяем слово "вода" (в любом регистре) на ссылку
-        return text.replaceAll("(?i)\\bвода\\b",
-                "<a href=\"" + CORAL_URL_HTML + "\">$0</a>");
-    }
-
     // универсальный safeExecute для BotApiMethod
-    private <T extends Serializable> void safeExecute(org.telegram.telegrambots.meta.api.methods.BotApiMethod<T> method) {
+    private <T extends Serializable> void safeExecute(BotApiMethod<T> method) {
+        ApiMetrics metrics = apiMetrics(method.getClass().getSimpleName());
+        long started = System.nanoTime();
         try {
             execute(method);
-            sleepQuietly(MESSAGE_DELAY_MS);
         } catch (TelegramApiException e) {
-            log.error("Telegram API error (BotApiMethod)", e);
+            metrics.errors().inc();
+            failed(method.getClass().getSimpleName(), e);
+        } finally {
+            metrics.latency().recordSince(started);
         }
     }
 
     // safeExecute для фото — возвращает Message (для получения file_id)
     private Message safeExecute(SendPhoto photo) {
+        ApiMetrics metrics = apiMetrics("SendPhoto");
+        long started = System.nanoTime();
         try {
-            Message msg = execute(photo);
-            sleepQuietly(MESSAGE_DELAY_MS);
-            return msg;
+            return execute(photo);
         } catch (TelegramApiException e) {
-            log.error("Telegram API error (SendPhoto)", e);
+            metrics.errors().inc();
+            failed("SendPhoto", e);
             return null;
+        } finally {
+            metrics.latency().recordSince(started);
         }
     }
 
     // safeExecute для видео — возвращает Message (для получения file_id)
     private Message safeExecute(SendVideo video) {
+        ApiMetrics metrics = apiMetrics("SendVideo");
+        long started = System.nanoTime();
+        try {
+            return execute(video);
+        } catch (TelegramApiException e) {
+            metrics.errors().inc();
+            failed("SendVideo", e);
+            return null;
+        } finally {
+            metrics.latency().recordSince(started);
+        }
+    }
+
+    // safeExecute для альбома — возвращает сообщения альбома (для получения file_id)
+    private List<Message> safeExecute(SendMediaGroup group) {
+        ApiMetrics metrics = apiMetrics("SendMediaGroup");
+        long started = System.nanoTime();
         try {
-            Message msg = execute(video);
-            sleepQuietly(MESSAGE_DELAY_MS);
-            return msg;
+            return execute(group);
         } catch (TelegramApiException e) {
-            log.error("Telegram API error (SendVideo)", e);
+            metrics.errors().inc();
+            failed("SendMediaGroup", e);
             return null;
+        } finally {
+            metrics.latency().recordSince(started);
         }
     }
 
     private void safeExecute(AnswerCallbackQuery answer) {
+        ApiMetrics metrics = apiMetrics("AnswerCallbackQuery");
         try {
-            // здесь без задержки, чтобы индикатор на кнопке сразу исчезал
-            execute(answer);
+            // мимо очереди чата, чтобы индикатор на кнопке сразу исчезал, но в рамках общего лимита.
+            // Ждать слот на потоке обработки апдейтов нельзя (при паузе после 429 встали бы все апдейты):
+            // без бюджета ответ пропускаем — индикатор на кнопке сам погаснет через несколько секунд
+            if (limiter.tryAcquireGlobal() > 0) {
+                ANSWERS_SKIPPED.inc();
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                execute(answer);
+            } finally {
+                metrics.latency().recordSince(started);
+            }
         } catch (TelegramApiException e) {
+            metrics.errors().inc();
+            // ответ на нажатие не повторяем (он нужен сразу), но 429 значит, что общий лимит исчерпан
+            RetryPolicy.RetryLater retry = RetryPolicy.classify(e);
+            if (retry != null && retry.retryAfterNanos() > 0) {
+                limiter.pauseGlobal(retry.retryAfterNanos());
+            }
             log.error("Telegram API error (AnswerCallbackQuery)", e);
         }
     }
 
-    private void sleepQuietly(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * Временную ошибку (429, 5xx, сеть) пробросить в OutboundQueue для повтора шага,
+     * 403 — в sendStep (чат недоступен), остальные — залогировать.
+     * Вызывается только из шагов доставки: повтор выполняет очередь чата.
+     */
+    private static void failed(String method, TelegramApiException e) {
+        if (RetryPolicy.isForbidden(e)) {
+            log.info("Telegram API error ({}): {}", method, e.getMessage());
+            throw ChatForbidden.INSTANCE;
+        }
+        RetryPolicy.RetryLater retry = RetryPolicy.classify(e);
+        if (retry != null) {
+            log.warn("Telegram API error ({}), will retry: {}", method, e.getMessage());
+            throw retry;
+        }
+        log.error("Telegram API error ({})", method, e);
+    }
+
+    /**
+     * 403 Forbidden: бот заблокирован пользователем, удалён из группы или аккаунт удалён.
+     */
+    private static final class ChatForbidden extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final ChatForbidden INSTANCE = new ChatForbidden();
+
+        private ChatForbidden() {
+            super("chat is not reachable", null, false, false);
+        }
+    }
+
+    /**
+     * Раздел в очереди чата: его шаги объединены в сессию доставки, которую отменяет следующий раздел.
+     */
+    private final class ActiveSection {
+        final long chatId;
+        final SectionPlan plan;
+        final OutboundQueue.Session session = new OutboundQueue.Session();
+        // шагов, ещё не выполненных и не отменённых
+        final AtomicInteger remaining;
+
+        ActiveSection(long chatId, SectionPlan plan, int steps) {
+            this.chatId = chatId;
+            this.plan = plan;
+            this.remaining = new AtomicInteger(steps);
         }
+
+        void stepDone() {
+            if (remaining.decrementAndGet() == 0) {
+                activeSections.remove(chatId, this);
+            }
+        }
+    }
+
+    // ------------- Метрики -------------
+
+    private record ApiMetrics(Metrics.Histogram latency, Metrics.Counter errors) {
+    }
+
+    private static ApiMetrics apiMetrics(String method) {
+        return API_METRICS.computeIfAbsent(method, m -> new ApiMetrics(
+                Metrics.histogram("waterbot_telegram_request_seconds", "Telegram Bot API request latency", "method", m),
+                Metrics.counter("waterbot_telegram_errors_total", "Failed Telegram Bot API requests", "method", m)));
+    }
+
+    private static Metrics.Counter blocked(String source) {
+        return Metrics.counter("waterbot_chats_blocked_total", "Chats that blocked the bot or removed it",
+                "source", source);
+    }
+
+    private static Metrics.Histogram updateLatency(String type) {
+        return Metrics.histogram("waterbot_update_seconds",
+                "Update handling latency from receipt to the end of processing", "type", type);
     }
-}
\ No newline at end of file
+}
@@ -3,35 +3,257 @@ package com.example.waterbot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class WaterBotApplication {
 
     private static final Logger log = LoggerFactory.getLogger(WaterBotApplication.class);
 
+    // Telegram начинает update_id заново с произвольного числа, если апдейтов не было неделю
+    private static final long UPDATE_STATE_MAX_AGE_MS = TimeUnit.DAYS.toMillis(6);
+
     public static void main(String[] args) {
         String token = Config.env("BOT_TOKEN", "");
         String username = Config.env("BOT_USERNAME", "ZhivayaVodaa_bot");
         String dbFile = Config.env("DB_FILE", "bot.db");
         String mediaDir = Config.env("MEDIA_DIR", "media");
         long spamInterval = Config.envLong("CALLBACK_SPAM_INTERVAL_MS", 2000L);
+        int textFloodLimit = (int) Config.envLong("TEXT_FLOOD_LIMIT", 5L);
+        long textFloodWindow = Config.envLong("TEXT_FLOOD_WINDOW_MS", 10000L);
+        int outboundThreads = (int) Config.envLong("OUTBOUND_THREADS", 16L);
+        int dbReadPool = (int) Config.envLong("DB_READ_POOL", 4L);
+        int writeBehindCapacity = (int) Config.envLong("DB_WRITE_QUEUE", 10_000L);
+        int writeBatchSize = (int) Config.envLong("DB_WRITE_BATCH", 500L);
+        long writeFlushMs = Config.envLong("DB_WRITE_FLUSH_MS", 200L);
+        long callbackRetentionDays = Config.envLong("CALLBACK_LOG_RETENTION_DAYS", 30L);
+        int retentionBatch = (int) Config.envLong("RETENTION_BATCH", 5000L);
+        long retentionIntervalMin = Config.envLong("RETENTION_INTERVAL_MIN", 10L);
+        String botApiUrl = Config.env("BOT_API_URL", "");
+        long warmupChatId = Config.envLong("MEDIA_WARMUP_CHAT_ID", 0L);
+        int warmupThreads = (int) Config.envLong("MEDIA_WARMUP_THREADS", 4L);
+        long warmupTimeoutSec = Config.envLong("MEDIA_WARMUP_TIMEOUT_SEC", 600L);
+        // загрузок в служебный чат в секунду; лимит личного чата (RATE_CHAT_PER_SEC) к нему не применяется
+        long warmupPerSec = Config.envLong("MEDIA_WARMUP_PER_SEC", 5L);
+        int mediaIndexThreads = (int) Config.envLong("MEDIA_INDEX_THREADS", Runtime.getRuntime().availableProcessors());
+        boolean hotReload = Config.envLong("SECTIONS_HOT_RELOAD", 1L) != 0;
+        String updateMode = Config.env("UPDATE_MODE", "polling");
+        String webhookHost = Config.env("WEBHOOK_HOST", "0.0.0.0");
+        int webhookPort = (int) Config.envLong("WEBHOOK_PORT", 8080L);
+        String webhookPath = Config.env("WEBHOOK_PATH", "/webhook");
+        String webhookSecret = Config.env("WEBHOOK_SECRET", "");
+        String webhookUrl = Config.env("WEBHOOK_URL", "");
+        int userRegistryCapacity = (int) Config.envLong("USER_REGISTRY_CAPACITY", 1L << 20);
+        String metricsHost = Config.env("METRICS_HOST", "127.0.0.1");
+        int metricsPort = (int) Config.envLong("METRICS_PORT", 9464L);
+        int botHttpConnections = (int) Config.envLong("BOT_HTTP_CONNECTIONS", 100L);
+        long adminChatId = Config.envLong("ADMIN_CHAT_ID", 0L);
+        int broadcastWindow = (int) Config.envLong("BROADCAST_WINDOW", 200L);
+        int broadcastPage = (int) Config.envLong("BROADCAST_PAGE", 1000L);
+        long shutdownTimeoutSec = Config.envLong("SHUTDOWN_TIMEOUT_SEC", 20L);
+        // по умолчанию журнал доставки лежит рядом с БД (в том же томе)
+        String journalDir = Config.env("JOURNAL_DIR",
+                Path.of(dbFile).toAbsolutePath().resolveSibling("journal").toString());
+        int journalSegmentKb = (int) Config.envLong("JOURNAL_SEGMENT_KB", 4096L);
 
         if (token.equals("YOUR_TELEGRAM_BOT_TOKEN")) {
             log.warn("BOT_TOKEN не задан! Установите реальный токен через переменные окружения.");
         }
 
-        try (Database db = new Database(dbFile)) {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+        SectionCatalog catalog;
+        try {
+            catalog = new SectionCatalog(mediaDir, mediaIndexThreads);
+        } catch (IllegalStateException e) {
+            // без манифеста боту нечего отвечать — не стартуем
+            log.error("Не удалось загрузить разделы: {}", e.getMessage());
+            return;
+        }
+        // битые ссылки разделов видно сразу при старте, а не по ошибке отправки у пользователя
+        List<String> missingMedia = catalog.missingMedia();
+        if (!missingMedia.isEmpty()) {
+            log.warn("Sections reference {} media missing in {}: {}", missingMedia.size(), mediaDir, missingMedia);
+        }
+
+        // всё, что живёт до остановки процесса, регистрируется в Lifecycle и закрывается в обратном порядке
+        Lifecycle lifecycle = new Lifecycle(TimeUnit.SECONDS.toNanos(shutdownTimeoutSec));
+        lifecycle.register("sections watcher", catalog);
+        lifecycle.installShutdownHook();
+
+        // эндпоинт метрик и проб поднимается первым и закрывается последним: готовность видна всё время
+        // METRICS_PORT=0 — без эндпоинта метрик
+        if (metricsPort > 0) {
+            try {
+                MetricsServer metrics = new MetricsServer(metricsHost, metricsPort, lifecycle);
+                metrics.start();
+                lifecycle.register("metrics endpoint", metrics);
+            } catch (IOException e) {
+                log.error("Не удалось открыть эндпоинт метрик {}:{}", metricsHost, metricsPort, e);
+                lifecycle.shutdown();
+                return;
+            }
+        }
+
+        Database db = new Database(dbFile, dbReadPool, writeBehindCapacity, writeBatchSize, writeFlushMs);
+        // БД закрывается после доставки: отложенные записи дописываются потоком писателя
+        lifecycle.register("database", db);
+        OutboundJournal journal;
+        try {
+            journal = new OutboundJournal(Path.of(journalDir), journalSegmentKb * 1024);
+        } catch (IOException e) {
+            log.error("Не удалось открыть журнал доставки {}", journalDir, e);
+            lifecycle.shutdown();
+            return;
+        }
+        // закрывается после очередей: шаги, не доставленные к сроку, останутся в журнале до следующего старта
+        lifecycle.register("outbound journal", journal);
+        RateLimiter limiter = RateLimiter.fromConfig();
+        RetryPolicy retry = RetryPolicy.fromConfig();
+        OutboundQueue outbound = new OutboundQueue(outboundThreads, limiter, retry);
+        lifecycle.register("outbound queues", deadline -> {
+            if (!outbound.awaitDrained(deadline)) {
+                log.warn("Shutdown deadline reached, {} delivery steps left undelivered", outbound.pending());
+            }
+            outbound.close();
+        });
+        // принятые update_id: повторы отбрасываются, polling после перезапуска продолжается с сохранённого смещения
+        ProcessedUpdates updates = new ProcessedUpdates();
+        Database.UpdateState updateState = db.loadUpdateState();
+        if (updateState != null && System.currentTimeMillis() - updateState.savedAt() < UPDATE_STATE_MAX_AGE_MS) {
+            updates.restore(updateState.offset(), updateState.processed());
+            log.info("Update offset restored: {}", updateState.offset());
+        } else if (updateState != null) {
+            // через неделю без апдейтов Telegram начинает update_id с произвольного числа — старое смещение не годится
+            log.info("Saved update offset {} is stale, starting from the server's", updateState.offset());
+        }
+        UpdateOffsetSaver offsetSaver = new UpdateOffsetSaver(db, updates);
+        // закрывается после диспетчера: последним сохраняется смещение с уже обработанными апдейтами
+        lifecycle.register("update offsets", deadline -> offsetSaver.run());
+        UpdateDispatcher dispatcher = UpdateDispatcher.fromConfig();
+        lifecycle.register("update dispatcher", deadline -> {
+            dispatcher.close();
+            if (!dispatcher.awaitTermination(deadline)) {
+                log.warn("Shutdown deadline reached while updates were still being handled");
+            }
+        });
+        UserRegistry users = new UserRegistry(userRegistryCapacity);
+        MediaCache mediaCache = new MediaCache(db);
+        int migratedKeys = mediaCache.migrateNameKeys(catalog.media());
+        if (migratedKeys > 0) {
+            log.info("Media cache: {} name-keyed file_id migrated to content keys", migratedKeys);
+        }
+        log.info("Media cache: {} file_id loaded", mediaCache.size());
+        FloodGuard floodGuard = new FloodGuard(Math.max(spamInterval, textFloodWindow));
+        registerGauges(db, outbound, mediaCache);
+
+        // фоновое обслуживание: чистка состояний в памяти и т.п.
+        ScheduledExecutorService maintenance =
+                Executors.newSingleThreadScheduledExecutor(OutboundQueue.namedThreads("maintenance"));
+        maintenance.scheduleWithFixedDelay(() -> floodGuard.evictIdle(System.currentTimeMillis()),
+                1, 1, TimeUnit.MINUTES);
+        maintenance.scheduleWithFixedDelay(() -> {
+            WriteBehindQueue<?> wb = db.writeBehind();
+            log.info("DB write-behind: depth={}, flushes={}, written={}, dropped={}, failed={}, last flush={} ms, max={} ms",
+                    wb.depth(), wb.flushes(), wb.written(), wb.dropped(), wb.failed(),
+                    TimeUnit.NANOSECONDS.toMillis(wb.lastFlushNanos()), TimeUnit.NANOSECONDS.toMillis(wb.maxFlushNanos()));
+        }, 5, 5, TimeUnit.MINUTES);
+        maintenance.scheduleWithFixedDelay(new CallbackLogRetention(db, callbackRetentionDays, retentionBatch),
+                1, Math.max(1L, retentionIntervalMin), TimeUnit.MINUTES);
+        maintenance.scheduleWithFixedDelay(offsetSaver, 1, 1, TimeUnit.SECONDS);
+        lifecycle.register("maintenance", deadline -> maintenance.shutdownNow());
+
+        try {
+            // BOT_API_URL — свой Bot API сервер или локальная заглушка, формат как у https://api.telegram.org/bot
+            DefaultBotOptions options = new DefaultBotOptions();
+            if (!botApiUrl.isBlank()) {
+                options.setBaseUrl(botApiUrl);
+            }
+
+            WaterBot bot = new WaterBot(options, token, username, mediaDir, db, mediaCache, users, catalog, outbound, journal, limiter, dispatcher,
+                    updates, floodGuard, spamInterval, textFloodLimit, textFloodWindow);
+            bot.widenConnectionPool(botHttpConnections);
+            // рассылка шлёт через ту же очередь доставки, что и ответы пользователям
+            Broadcast broadcast = new Broadcast(db, catalog, bot::deliver, broadcastWindow, broadcastPage);
+            // при остановке прогресс сохраняется, и после старта рассылка продолжится
+            lifecycle.register("broadcast", deadline -> broadcast.close(deadline));
+            if (adminChatId != 0) {
+                bot.enableBroadcast(broadcast, adminChatId);
+            }
+
+            // до начала приёма апдейтов заливаем медиа, которых ещё нет в кэше
+            if (warmupChatId != 0) {
+                new MediaWarmup(bot, mediaCache, catalog.media(), limiter, retry, warmupChatId, warmupPerSec,
+                        warmupThreads).run(catalog.sections().mediaKeys(), warmupTimeoutSec, TimeUnit.SECONDS);
+            } else {
+                log.info("MEDIA_WARMUP_CHAT_ID не задан, прогрев медиа пропущен");
+            }
 
-            WaterBot bot = new WaterBot(token, username, mediaDir, db, spamInterval);
-            botsApi.registerBot(bot);
+            // разделы, прерванные остановкой или падением, продолжаются с того шага, где остановились
+            int resumed = bot.resumeJournal();
+            if (resumed > 0) {
+                log.info("Resuming {} undelivered steps from the outbound journal", resumed);
+            }
 
-            log.info("WaterBot запущен. Username: @{}, DB: {}, MEDIA_DIR: {}",
-                    username, dbFile, mediaDir);
-        } catch (TelegramApiException e) {
+            if ("webhook".equalsIgnoreCase(updateMode)) {
+                // UPDATE_MODE=webhook: апдейты приходят POST-запросами на встроенный сервер
+                WebhookServer webhook = new WebhookServer(webhookHost, webhookPort, webhookPath, webhookSecret,
+                        bot::onUpdateReceived);
+                webhook.start();
+                // остановка первым делом закрывает приём: Telegram повторит недоставленные апдейты другому экземпляру
+                lifecycle.register("webhook", webhook);
+                // WEBHOOK_URL — публичный адрес для setWebhook; без него webhook настраивается снаружи
+                if (!webhookUrl.isBlank()) {
+                    if (webhookSecret.isBlank()) {
+                        log.warn("WEBHOOK_SECRET не задан: сервер примет апдейт от любого, кто знает адрес");
+                    }
+                    WebhookServer.register(options.getBaseUrl(), token, webhookUrl, webhookSecret);
+                }
+            } else {
+                // long polling с сохранённого смещения; заодно снимает webhook, если он был
+                BotSession session = bot.startPolling();
+                lifecycle.register("long polling", deadline -> session.stop());
+            }
+
+            if (hotReload) {
+                try {
+                    catalog.watch();
+                } catch (IOException e) {
+                    log.warn("Слежение за {} недоступно, разделы обновятся только после перезапуска", mediaDir, e);
+                }
+            }
+
+            // рассылка, прерванная остановкой бота, продолжается с сохранённой точки
+            broadcast.resumeInterrupted();
+
+            lifecycle.ready();
+            log.info("WaterBot запущен и готов ({}). Username: @{}, DB: {}, MEDIA_DIR: {}",
+                    updateMode, username, dbFile, mediaDir);
+        } catch (TelegramApiException | IOException | InterruptedException e) {
             log.error("Ошибка запуска Telegram бота", e);
+            lifecycle.shutdown();
         }
     }
+
+    private static void registerGauges(Database db, OutboundQueue outbound, MediaCache mediaCache) {
+        Metrics.gauge("waterbot_outbound_pending_steps", "Delivery steps waiting in per-chat queues", outbound::pending);
+        Metrics.gauge("waterbot_outbound_active_chats", "Chats with a non-empty delivery queue", outbound::activeChats);
+        Metrics.counter("waterbot_media_cache_hits_total", "Media file_id lookups served from the cache", mediaCache::hits);
+        Metrics.counter("waterbot_media_cache_misses_total", "Media file_id lookups that required an upload", mediaCache::misses);
+        Metrics.gauge("waterbot_media_cache_hit_ratio", "Share of media lookups served from the cache", () -> {
+            long hits = mediaCache.hits();
+            long total = hits + mediaCache.misses();
+            return total == 0 ? 0 : (double) hits / total;
+        });
+        Metrics.gauge("waterbot_media_cache_entries", "Known media file_ids", mediaCache::size);
+        WriteBehindQueue<?> wb = db.writeBehind();
+        Metrics.gauge("waterbot_db_write_behind_depth", "Writes waiting in the write-behind queue", wb::depth);
+        Metrics.counter("waterbot_db_write_behind_dropped_total", "Writes dropped because the write-behind queue was full or closed", wb::dropped);
+    }
 }
\ No newline at end of file
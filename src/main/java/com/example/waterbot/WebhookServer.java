@@ -0,0 +1,169 @@
+package com.example.waterbot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Приём апдейтов через webhook на встроенном HTTP-сервере JDK.
+ * <p>
+ * Запрос проверяется по заголовку X-Telegram-Bot-Api-Secret-Token, тело сразу разбирается в Update,
+ * Telegram получает 200 до обработки, а сам апдейт уходит в UpdateDispatcher.
+ * Соединения обслуживаются виртуальными потоками, если JVM их поддерживает.
+ * Локально можно проверить так: curl -H 'X-Telegram-Bot-Api-Secret-Token: ...' -d @update.json http://localhost:8080/webhook
+ */
+public class WebhookServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookServer.class);
+
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // апдейт с текстом и клавиатурой — единицы КБ; всё крупнее считаем мусором
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String path;
+    private final byte[] secret;
+    private final Consumer<Update> sink;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param secretToken пустая строка — без проверки заголовка (только для локальной отладки)
+     * @param sink        куда передавать разобранные апдейты; должен быстро возвращать управление
+     */
+    public WebhookServer(String host, int port, String path, String secretToken, Consumer<Update> sink)
+            throws IOException {
+        this.path = path;
+        this.secret = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.sink = sink;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        ExecutorService virtual = UpdateDispatcher.newVirtualThreadExecutor();
+        this.executor = virtual != null
+                ? virtual
+                : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2,
+                        OutboundQueue.namedThreads("webhook"));
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Webhook server listening on {}{}{}", server.getAddress(), path,
+                secret.length == 0 ? " (secret token check disabled)" : "");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405);
+                return;
+            }
+            if (!path.equals(exchange.getRequestURI().getPath())) {
+                reply(exchange, 404);
+                return;
+            }
+            if (secret.length > 0) {
+                String header = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+                // сравнение за постоянное время, чтобы не подсказывать секрет по таймингу
+                if (header == null || !MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8))) {
+                    rejected.increment();
+                    reply(exchange, 401);
+                    return;
+                }
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+                if (bytes.length > MAX_BODY_BYTES) {
+                    rejected.increment();
+                    reply(exchange, 413);
+                    return;
+                }
+                update = JSON.readValue(bytes, Update.class);
+            } catch (JsonProcessingException e) {
+                rejected.increment();
+                log.warn("Webhook: malformed update: {}", e.getOriginalMessage());
+                reply(exchange, 400);
+                return;
+            }
+
+            // подтверждаем до обработки: Telegram не должен ждать ни очередей, ни БД
+            reply(exchange, 200);
+            accepted.increment();
+            sink.accept(update);
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Зарегистрировать webhook в Bot API (setWebhook).
+     *
+     * @param apiBaseUrl база Bot API в формате https://api.telegram.org/bot
+     * @throws IOException если Telegram не принял адрес
+     */
+    public static void register(String apiBaseUrl, String token, String url, String secretToken)
+            throws IOException, InterruptedException {
+        StringBuilder form = new StringBuilder("url=").append(URLEncoder.encode(url, StandardCharsets.UTF_8));
+        if (!secretToken.isEmpty()) {
+            form.append("&secret_token=").append(URLEncoder.encode(secretToken, StandardCharsets.UTF_8));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(apiBaseUrl + token + "/setWebhook"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofString());
+        JsonNode body = JSON.readTree(response.body());
+        if (!body.path("ok").asBoolean(false)) {
+            throw new IOException("setWebhook failed: HTTP " + response.statusCode() + " "
+                    + body.path("description").asText(""));
+        }
+        log.info("Webhook registered: {}", url);
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.waterbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отложенная пакетная запись: вызывающий поток только кладёт запись в ограниченную очередь,
+ * а фоновый поток сбрасывает накопленное одной транзакцией — по размеру пакета или по таймеру.
+ * При закрытии всё, что осталось в очереди, дописывается.
+ */
+public class WriteBehindQueue<T> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    // как часто фоновый поток проверяет, не закрыта ли очередь
+    private static final long CLOSE_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Получатель пакета: пишет его целиком одной транзакцией.
+     */
+    @FunctionalInterface
+    public interface BatchSink<T> {
+        void write(List<T> batch) throws Exception;
+    }
+
+    private final BlockingQueue<T> queue;
+    private final BatchSink<T> sink;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public WriteBehindQueue(String name, BatchSink<T> sink, int capacity, int batchSize, long flushIntervalMs) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, flushIntervalMs));
+        this.thread = OutboundQueue.namedThreads(name).newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Поставить запись в очередь, не блокируя вызывающий поток (это поток обработки апдейтов).
+     * Если очередь переполнена или уже закрыта — запись теряется и считается в {@link #dropped()}.
+     */
+    public void add(T item) {
+        if (!running) {
+            drop("closed");
+            return;
+        }
+        if (!queue.offer(item)) {
+            drop("full");
+            return;
+        }
+        // close() мог завершить поток между проверкой и offer: тогда запись дописать уже некому
+        if (!running && !thread.isAlive() && queue.remove(item)) {
+            drop("closed");
+        }
+    }
+
+    private void drop(String reason) {
+        long total = dropped.incrementAndGet();
+        // при перегрузке теряются тысячи записей подряд — в лог только первая и каждая тысячная
+        if (total == 1 || total % 1000 == 0) {
+            log.warn("Write-behind queue is {}, dropped write (total dropped: {})", reason, total);
+        }
+    }
+
+    private void run() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = poll(flushIntervalNanos);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // добираем пакет, пока он не заполнится или не выйдет время с первой записи
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    T next = poll(deadline - System.nanoTime());
+                    if (next == null) {
+                        if (running && deadline - System.nanoTime() > 0) {
+                            continue;
+                        }
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // не прерываемся: close() останавливает цикл флагом, чтобы последний пакет дописался
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ждёт запись не дольше {@code timeoutNanos} и не дольше {@link #CLOSE_CHECK_NANOS}: иначе close()
+     * ждал бы таймера пакета. После close() не ждёт вовсе — дописывается только то, что уже в очереди.
+     */
+    private T poll(long timeoutNanos) throws InterruptedException {
+        if (!running || timeoutNanos <= 0) {
+            return queue.poll();
+        }
+        return queue.poll(Math.min(timeoutNanos, CLOSE_CHECK_NANOS), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush(List<T> batch) {
+        long start = System.nanoTime();
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("Write-behind flush of {} rows failed", batch.size(), e);
+        }
+        long elapsed = System.nanoTime() - start;
+        flushes.incrementAndGet();
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+        log.debug("Write-behind flushed {} rows in {} us", batch.size(), elapsed / 1000);
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public long flushes() {
+        return flushes.get();
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    public long lastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    public long maxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    /**
+     * Останавливает приём и ждёт, пока фоновый поток допишет очередь.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Write-behind thread did not finish, {} writes left in queue", queue.size());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FloodGuardTest {
+
+    private static final long WINDOW = 1000;
+
+    @Test
+    void limitWithinWindow() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "text", 3, WINDOW, 0));
+        assertTrue(guard.tryAcquire(1, "text", 3, WINDOW, 10));
+        assertTrue(guard.tryAcquire(1, "text", 3, WINDOW, 20));
+        assertFalse(guard.tryAcquire(1, "text", 3, WINDOW, 30));
+    }
+
+    @Test
+    void windowSlidesExactlyAtItsEdge() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "text", 2, WINDOW, 0));
+        assertTrue(guard.tryAcquire(1, "text", 2, WINDOW, 500));
+        // самое старое событие ещё в окне
+        assertFalse(guard.tryAcquire(1, "text", 2, WINDOW, 999));
+        // ровно через окно после него — уже вышло
+        assertTrue(guard.tryAcquire(1, "text", 2, WINDOW, 1000));
+        // теперь самое старое — событие в 500
+        assertFalse(guard.tryAcquire(1, "text", 2, WINDOW, 1499));
+        assertTrue(guard.tryAcquire(1, "text", 2, WINDOW, 1500));
+    }
+
+    @Test
+    void rejectedEventsDoNotExtendTheWindow() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "cb", 1, WINDOW, 0));
+        for (long t = 100; t < WINDOW; t += 100) {
+            assertFalse(guard.tryAcquire(1, "cb", 1, WINDOW, t));
+        }
+        assertTrue(guard.tryAcquire(1, "cb", 1, WINDOW, WINDOW));
+    }
+
+    @Test
+    void chatsAndActionsAreIndependent() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "a", 1, WINDOW, 0));
+        assertFalse(guard.tryAcquire(1, "a", 1, WINDOW, 1));
+        assertTrue(guard.tryAcquire(1, "b", 1, WINDOW, 1));
+        assertTrue(guard.tryAcquire(2, "a", 1, WINDOW, 1));
+    }
+
+    @Test
+    void evictIdleKeepsActiveWindows() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "cb", 1, WINDOW, 0));
+        assertTrue(guard.tryAcquire(2, "cb", 1, WINDOW, 800));
+        guard.evictIdle(1000);
+        // окно чата 2 ещё действует и после чистки: повтор отклоняется
+        assertFalse(guard.tryAcquire(2, "cb", 1, WINDOW, 900));
+        // чат 1 вычищен, новое окно заводится заново
+        assertTrue(guard.tryAcquire(1, "cb", 1, WINDOW, 1000));
+        assertFalse(guard.tryAcquire(1, "cb", 1, WINDOW, 1001));
+    }
+
+    @Test
+    void evictIdleKeepsWindowUntilItFullyExpires() {
+        FloodGuard guard = new FloodGuard(WINDOW);
+        assertTrue(guard.tryAcquire(1, "cb", 1, WINDOW, 0));
+        // за миллисекунду до конца окна событие ещё учитывается
+        guard.evictIdle(WINDOW - 1);
+        assertFalse(guard.tryAcquire(1, "cb", 1, WINDOW, WINDOW - 1));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundJournalTest {
+
+    private static final int SEGMENT = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysOnlyUnackedStepsOfPartiallyAckedSegment() throws IOException {
+        List<OutboundJournal.PendingStep> expected = new ArrayList<>();
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            for (int i = 0; i < 5; i++) {
+                long seq = journal.append(100 + i, "section-" + i, 0xF00DL + i, i);
+                if (i % 2 == 1) {
+                    journal.ack(seq);
+                } else {
+                    expected.add(new OutboundJournal.PendingStep(seq, 100 + i, "section-" + i, 0xF00DL + i, i));
+                }
+            }
+        }
+
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            assertEquals(expected, journal.recovered());
+            // отдаются один раз
+            assertEquals(List.of(), journal.recovered());
+            assertEquals(expected.size(), journal.liveSteps());
+            // seq продолжается после восстановленных
+            assertTrue(journal.append(1, "next", 0, 0) > expected.get(expected.size() - 1).seq());
+            journal.ack(expected.get(0).seq());
+        }
+
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            List<OutboundJournal.PendingStep> recovered = journal.recovered();
+            assertEquals(expected.subList(1, expected.size()), recovered.subList(0, expected.size() - 1));
+            assertEquals("next", recovered.get(recovered.size() - 1).planId());
+        }
+    }
+
+    @Test
+    void rolloverKeepsUnackedStepsAndRemovesOldSegments() throws IOException {
+        List<Long> kept = new ArrayList<>();
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            // заметно больше одного сегмента записей
+            for (int i = 0; i < 5_000; i++) {
+                long seq = journal.append(i, "section", 1, 0);
+                if (i % 250 == 0) {
+                    kept.add(seq);
+                } else {
+                    journal.ack(seq);
+                }
+            }
+            assertEquals(kept.size(), journal.liveSteps());
+            assertEquals(1, segmentFiles().size());
+        }
+
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            assertEquals(kept, journal.recovered().stream().map(OutboundJournal.PendingStep::seq).toList());
+            assertEquals(1, segmentFiles().size());
+        }
+    }
+
+    @Test
+    void tornRecordEndsReplay() throws IOException {
+        long first;
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            first = journal.append(1, "a", 7, 0);
+            journal.append(2, "b", 7, 1);
+        }
+        // запись шага "a"/"b": длина + тип + seq + chatId + отпечаток + шаг + длина id + 1 байт id
+        int record = Integer.BYTES + 1 + 3 * Long.BYTES + Integer.BYTES + Short.BYTES + 1;
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(record + record / 2);
+        }
+
+        try (OutboundJournal journal = new OutboundJournal(dir, SEGMENT)) {
+            assertEquals(List.of(new OutboundJournal.PendingStep(first, 1, "a", 7, 0)), journal.recovered());
+        }
+    }
+
+    @Test
+    void secondInstanceRunsWithoutJournalWhileLocked() throws IOException {
+        OutboundJournal owner = new OutboundJournal(dir, SEGMENT);
+        long seq = owner.append(1, "section", 3, 2);
+        List<Path> ownerSegments = segmentFiles();
+
+        try (OutboundJournal second = new OutboundJournal(dir, SEGMENT)) {
+            assertEquals(List.of(), second.recovered());
+            second.append(9, "other", 0, 0);
+            assertEquals(0, second.liveSteps());
+            // чужие сегменты не тронуты
+            assertEquals(ownerSegments, segmentFiles());
+        }
+        owner.close();
+
+        try (OutboundJournal next = new OutboundJournal(dir, SEGMENT)) {
+            assertEquals(List.of(new OutboundJournal.PendingStep(seq, 1, "section", 3, 2)), next.recovered());
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+}
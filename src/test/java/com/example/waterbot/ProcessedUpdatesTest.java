@@ -0,0 +1,152 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessedUpdatesTest {
+
+    // размер окна в ProcessedUpdates
+    private static final long WINDOW = 1 << 16;
+
+    @Test
+    void duplicateIsRejected() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        assertTrue(updates.accept(1));
+        assertFalse(updates.accept(1));
+        updates.complete(1);
+        assertFalse(updates.accept(1));
+    }
+
+    @Test
+    void committedOffsetStopsBeforeOldestInFlight() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        for (long id = 1; id <= 3; id++) {
+            assertTrue(updates.accept(id));
+        }
+        updates.complete(1);
+        updates.complete(3);
+        assertEquals(1, updates.committedOffset());
+        updates.complete(2);
+        assertEquals(3, updates.committedOffset());
+    }
+
+    @Test
+    void idsAcrossRingBoundaryDoNotCollide() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        // последний бит кольца и первый бит следующего оборота
+        for (long id = WINDOW - 2; id <= WINDOW + 1; id++) {
+            assertTrue(updates.accept(id), "first delivery of " + id);
+            updates.complete(id);
+        }
+        for (long id = WINDOW - 2; id <= WINDOW + 1; id++) {
+            assertFalse(updates.accept(id), "repeated delivery of " + id);
+        }
+        assertEquals(WINDOW + 1, updates.committedOffset());
+    }
+
+    @Test
+    void slotReusedAfterWindowSlides() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        assertTrue(updates.accept(5));
+        updates.complete(5);
+        // тот же индекс в кольце, но следующий оборот: старый бит не должен выдавать его за повтор
+        assertTrue(updates.accept(5 + WINDOW));
+        assertFalse(updates.accept(5 + WINDOW));
+        // выпавший из окна id считается обработанным
+        assertFalse(updates.accept(5));
+    }
+
+    @Test
+    void jumpFarBeyondWindowClearsRing() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        for (long id = 1; id <= 100; id++) {
+            updates.accept(id);
+            updates.complete(id);
+        }
+        long far = 3 * WINDOW + 7;
+        assertTrue(updates.accept(far));
+        // биты старых id не должны всплыть на их месте в новом обороте
+        for (long id = far - WINDOW + 1; id < far; id += 997) {
+            assertTrue(updates.accept(id), "fresh id " + id);
+        }
+        assertFalse(updates.accept(far - WINDOW));
+    }
+
+    @Test
+    void restoreRejectsUpdatesProcessedAboveOffset() {
+        ProcessedUpdates before = new ProcessedUpdates();
+        for (long id = 100; id <= 110; id++) {
+            assertTrue(before.accept(id));
+        }
+        for (long id = 100; id <= 110; id++) {
+            if (id != 105) {
+                before.complete(id);
+            }
+        }
+        ProcessedUpdates.Snapshot snapshot = before.snapshot();
+        assertEquals(104, snapshot.committedOffset());
+
+        ProcessedUpdates after = new ProcessedUpdates();
+        after.restore(snapshot.committedOffset(), snapshot.processed());
+        assertEquals(104, after.committedOffset());
+        // getUpdates с offset 105 возвращает всю неподтверждённую пачку заново
+        assertFalse(after.accept(104));
+        assertTrue(after.accept(105));
+        for (long id = 106; id <= 110; id++) {
+            assertFalse(after.accept(id), "already processed " + id);
+        }
+        assertTrue(after.accept(111));
+        assertFalse(after.accept(105));
+        after.complete(105);
+        after.complete(111);
+        assertEquals(111, after.committedOffset());
+    }
+
+    @Test
+    void offsetDoesNotJumpOverUpdatesMissingAfterRestore() {
+        ProcessedUpdates before = new ProcessedUpdates();
+        before.accept(1);
+        before.accept(2);
+        before.accept(3);
+        before.complete(1);
+        before.complete(3);
+        ProcessedUpdates.Snapshot snapshot = before.snapshot();
+
+        ProcessedUpdates after = new ProcessedUpdates();
+        after.restore(snapshot.committedOffset(), snapshot.processed());
+        // 2 ещё не пришёл заново: сохранять смещение за ним нельзя
+        assertEquals(1, after.committedOffset());
+        assertEquals(1, after.snapshot().committedOffset());
+        assertArrayEquals(snapshot.processed(), after.snapshot().processed());
+    }
+
+    @Test
+    void snapshotRoundTripsThroughRestore() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        for (long id = 1; id <= 200; id++) {
+            updates.accept(id);
+            if (id % 3 != 0) {
+                updates.complete(id);
+            }
+        }
+        ProcessedUpdates.Snapshot first = updates.snapshot();
+        ProcessedUpdates restored = new ProcessedUpdates();
+        restored.restore(first.committedOffset(), first.processed());
+        ProcessedUpdates.Snapshot second = restored.snapshot();
+        assertEquals(first.committedOffset(), second.committedOffset());
+        assertArrayEquals(first.processed(), second.processed());
+    }
+
+    @Test
+    void restoreWithoutBitsStartsAfterOffset() {
+        ProcessedUpdates updates = new ProcessedUpdates();
+        updates.restore(41, null);
+        assertEquals(41, updates.committedOffset());
+        assertFalse(updates.accept(41));
+        assertTrue(updates.accept(42));
+    }
+}
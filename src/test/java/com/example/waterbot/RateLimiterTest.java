@@ -0,0 +1,100 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // лимиты щедрые везде, кроме проверяемого: ожидания в тестах не зависят от скорости машины
+    private static RateLimiter limiter(long globalPerSecond, long globalBurst, long chatPerSecond,
+                                       long groupPerMinute) {
+        return new RateLimiter(globalPerSecond, globalBurst, globalPerSecond, chatPerSecond, 1, groupPerMinute, 1);
+    }
+
+    @Test
+    void privateChatGetsOneSlotPerInterval() {
+        RateLimiter limiter = limiter(1000, 1000, 1, 20);
+        assertEquals(0, limiter.tryAcquire(1));
+        long wait = limiter.tryAcquire(1);
+        assertTrue(wait > 0 && wait <= SECOND, "wait " + wait);
+        // другие чаты не ждут
+        assertEquals(0, limiter.tryAcquire(2));
+    }
+
+    @Test
+    void groupUsesPerMinuteBucket() {
+        RateLimiter limiter = limiter(1000, 1000, 1, 20);
+        assertEquals(0, limiter.tryAcquire(-100));
+        long wait = limiter.tryAcquire(-100);
+        // 20 в минуту — слот раз в 3 с, а не раз в секунду, как у личного чата
+        assertTrue(wait > 2 * SECOND && wait <= 3 * SECOND, "wait " + wait);
+    }
+
+    @Test
+    void globalBurstThenWait() {
+        RateLimiter limiter = limiter(30, 30, 1000, 1000);
+        for (int chat = 1; chat <= 30; chat++) {
+            assertEquals(0, limiter.tryAcquire(chat), "chat " + chat);
+        }
+        long wait = limiter.tryAcquire(31);
+        assertTrue(wait > 0 && wait <= SECOND / 30, "wait " + wait);
+    }
+
+    @Test
+    void chatKeepsItsSlotWhenGlobalBudgetIsExhausted() throws InterruptedException {
+        // общий — 10 в секунду без всплеска, у чатов — 1 в секунду
+        RateLimiter limiter = limiter(10, 1, 1, 20);
+        assertEquals(0, limiter.tryAcquire(1));
+        long wait = limiter.tryAcquire(2);
+        assertTrue(wait > 0 && wait <= SECOND / 10, "wait " + wait);
+        // если бы неудачная попытка списала слот чата 2, он ждал бы ещё секунду
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, limiter.tryAcquire(2));
+    }
+
+    @Test
+    void pauseChatAffectsOnlyThatChat() {
+        RateLimiter limiter = limiter(1000, 1000, 1000, 1000);
+        limiter.pauseChat(1, SECOND / 2);
+        long wait = limiter.tryAcquire(1);
+        assertTrue(wait > SECOND / 4 && wait <= SECOND / 2, "wait " + wait);
+        assertEquals(0, limiter.tryAcquire(2));
+    }
+
+    @Test
+    void pauseGlobalAffectsEveryChat() {
+        RateLimiter limiter = limiter(1000, 1000, 1000, 1000);
+        limiter.pauseGlobal(SECOND / 2);
+        for (long chat : new long[]{1, 2, -100}) {
+            long wait = limiter.tryAcquire(chat);
+            assertTrue(wait > SECOND / 4 && wait <= SECOND / 2, "chat " + chat + " wait " + wait);
+        }
+    }
+
+    @Test
+    void pauseNeverShortensExistingWait() {
+        RateLimiter limiter = limiter(1000, 1000, 1000, 1000);
+        limiter.pauseChat(1, SECOND);
+        limiter.pauseChat(1, SECOND / 10);
+        assertTrue(limiter.tryAcquire(1) > SECOND / 2);
+    }
+
+    @Test
+    void broadcastStaysWithinItsBudgetAndLeavesRoomForDialogs() {
+        // общий — 100 в секунду, рассылке — 1 в секунду
+        RateLimiter limiter = new RateLimiter(100, 100, 1, 1000, 1, 1000, 1);
+        assertEquals(0, limiter.tryAcquire(1, true));
+        long wait = limiter.tryAcquire(2, true);
+        assertTrue(wait > 0 && wait <= SECOND, "wait " + wait);
+        // ответы на нажатия бюджет рассылки не трогает
+        for (int chat = 3; chat < 50; chat++) {
+            assertEquals(0, limiter.tryAcquire(chat), "chat " + chat);
+        }
+    }
+}
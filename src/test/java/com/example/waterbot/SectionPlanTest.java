@@ -0,0 +1,145 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SectionPlanTest {
+
+    @Test
+    void shortTextIsOneChunk() {
+        assertEquals(List.of("Вода"), SectionPlan.split("  Вода \n", 100));
+    }
+
+    @Test
+    void chunksAreNonEmptyAndFitTheLimit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(i % 7 == 0 ? "\n\n" : " ").append("строка").append(i);
+        }
+        List<String> chunks = SectionPlan.split(text.toString(), 100);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertFalse(chunk.isBlank());
+            assertTrue(chunk.length() <= 100, chunk);
+        }
+        // режем по пробелам: слова не разрываются и не теряются
+        assertEquals(text.toString().trim().split("\\s+").length,
+                String.join(" ", chunks).split("\\s+").length);
+    }
+
+    @Test
+    void prefersSpaceOutsideOpenElement() {
+        // пробел внутри <b>…</b> дальше, но резать там нельзя — уходим к пробелу перед тегом
+        String text = "раз два <b>жирный текст</b> хвост";
+        int split = SectionPlan.splitPoint(text, 0, 22);
+        assertEquals(text.indexOf(" <b>"), split);
+    }
+
+    @Test
+    void neverCutsInsideTag() {
+        String text = "слово <a href=\"https://example.com/very/long/path\">ссылка</a>";
+        int split = SectionPlan.splitPoint(text, 0, 30);
+        assertEquals(text.indexOf(" <a"), split);
+    }
+
+    @Test
+    void spaceRightAtTheLimitIsAValidCut() {
+        assertEquals(5, SectionPlan.splitPoint("abcde fgh", 0, 5));
+    }
+
+    @Test
+    void hardCutWithoutSpaces() {
+        String text = "x".repeat(250);
+        List<String> chunks = SectionPlan.split(text, 100);
+        assertEquals(List.of("x".repeat(100), "x".repeat(100), "x".repeat(50)), chunks);
+    }
+
+    @Test
+    void splitPointRespectsOffset() {
+        String text = "aaaa bbbb cccc dddd";
+        // от второго слова в 9 символов влезает "bbbb cccc", режем на пробеле после него
+        assertEquals(14, SectionPlan.splitPoint(text, 5, 9));
+    }
+
+    @Test
+    void captionWithinLimitIsKept() {
+        assertArrayEquals(new String[]{"подпись", null}, SectionPlan.splitCaption("подпись"));
+        assertArrayEquals(new String[2], SectionPlan.splitCaption("  "));
+        assertArrayEquals(new String[2], SectionPlan.splitCaption(null));
+    }
+
+    @Test
+    void longCaptionSpillsIntoText() {
+        String caption = "слово ".repeat(300).trim();
+        String[] parts = SectionPlan.splitCaption(caption);
+        assertTrue(parts[0].length() <= SectionPlan.MAX_CAPTION_LENGTH);
+        assertEquals(caption, parts[0] + " " + parts[1]);
+    }
+
+    @Test
+    void consecutiveMediaBecomeOneAlbum() {
+        SectionPlan.Step text = new SectionPlan.Text("до", null, null);
+        SectionPlan.Step a = photo("a.jpg", null);
+        SectionPlan.Step b = video("b.mp4", null);
+        SectionPlan.Step c = photo("c.jpg", null);
+        assertEquals(List.of(text, new SectionPlan.Album(List.of(a, b, c))),
+                SectionPlan.groupAlbums(List.of(text, a, b, c)));
+    }
+
+    @Test
+    void singleMediaStaysAsIs() {
+        SectionPlan.Step a = photo("a.jpg", null);
+        SectionPlan.Step text = new SectionPlan.Text("между", null, null);
+        SectionPlan.Step b = photo("b.jpg", null);
+        assertEquals(List.of(a, text, b), SectionPlan.groupAlbums(List.of(a, text, b)));
+    }
+
+    @Test
+    void albumsAreCappedAtMaxSize() {
+        List<SectionPlan.Step> photos = new ArrayList<>();
+        for (int i = 0; i < SectionPlan.MAX_ALBUM_SIZE + 3; i++) {
+            photos.add(photo(i + ".jpg", null));
+        }
+        List<SectionPlan.Step> grouped = SectionPlan.groupAlbums(photos);
+        assertEquals(List.of(
+                new SectionPlan.Album(photos.subList(0, SectionPlan.MAX_ALBUM_SIZE)),
+                new SectionPlan.Album(photos.subList(SectionPlan.MAX_ALBUM_SIZE, photos.size()))), grouped);
+    }
+
+    @Test
+    void mediaWithKeyboardBreaksTheRun() {
+        SectionPlan.Step a = photo("a.jpg", null);
+        SectionPlan.Step b = photo("b.jpg", null);
+        SectionPlan.Step withButtons = new SectionPlan.Photo("c.jpg", null, new InlineKeyboardMarkup(List.of()));
+        SectionPlan.Step d = photo("d.jpg", null);
+        assertEquals(List.of(new SectionPlan.Album(List.of(a, b)), withButtons, d),
+                SectionPlan.groupAlbums(List.of(a, b, withButtons, d)));
+    }
+
+    @Test
+    void captionedMediaOnlyStartsAnAlbum() {
+        SectionPlan.Step a = photo("a.jpg", null);
+        SectionPlan.Step captioned = photo("b.jpg", "подпись");
+        SectionPlan.Step c = video("c.mp4", null);
+        SectionPlan.Step lone = photo("d.jpg", "ещё подпись");
+        // подпись второго элемента Telegram под альбомом не покажет — с неё начинается новый
+        assertEquals(List.of(a, new SectionPlan.Album(List.of(captioned, c)), lone),
+                SectionPlan.groupAlbums(List.of(a, captioned, c, lone)));
+    }
+
+    private static SectionPlan.Step photo(String fileName, String caption) {
+        return new SectionPlan.Photo(fileName, caption, null);
+    }
+
+    private static SectionPlan.Step video(String fileName, String caption) {
+        return new SectionPlan.Video(fileName, caption, null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserRegistryTest {
+
+    // ёмкость 8 — ровно один набор из 8 ячеек: все чаты конкурируют за него
+    private static final int ONE_SET = 8;
+
+    @Test
+    void unknownChat() {
+        assertEquals(UserRegistry.UNKNOWN, new UserRegistry(ONE_SET).lastStartAt(1));
+    }
+
+    @Test
+    void recordAndUpdateInPlace() {
+        UserRegistry users = new UserRegistry(ONE_SET);
+        users.recordStart(1, 100);
+        users.recordStart(1, 200);
+        assertEquals(200, users.lastStartAt(1));
+        // повторная запись того же чата не заняла вторую ячейку: влезают ещё 7 чатов
+        for (long chat = 2; chat <= 8; chat++) {
+            users.recordStart(chat, 300);
+        }
+        for (long chat = 1; chat <= 8; chat++) {
+            assertEquals(chat == 1 ? 200 : 300, users.lastStartAt(chat), "chat " + chat);
+        }
+    }
+
+    @Test
+    void fullSetEvictsOldestStart() {
+        UserRegistry users = new UserRegistry(ONE_SET);
+        long[] startedAt = {500, 300, 800, 100, 700, 200, 600, 400};
+        for (int i = 0; i < startedAt.length; i++) {
+            users.recordStart(i + 1, startedAt[i]);
+        }
+        users.recordStart(100, 900);
+        // вытеснен чат 4 (/start в 100), остальные на месте
+        assertEquals(UserRegistry.UNKNOWN, users.lastStartAt(4));
+        assertEquals(900, users.lastStartAt(100));
+        for (int i = 0; i < startedAt.length; i++) {
+            if (i != 3) {
+                assertEquals(startedAt[i], users.lastStartAt(i + 1), "chat " + (i + 1));
+            }
+        }
+
+        users.recordStart(101, 1000);
+        // следующий по давности — чат 6 (/start в 200)
+        assertEquals(UserRegistry.UNKNOWN, users.lastStartAt(6));
+        assertEquals(300, users.lastStartAt(2));
+    }
+
+    @Test
+    void freshStartProtectsFromEviction() {
+        UserRegistry users = new UserRegistry(ONE_SET);
+        for (long chat = 1; chat <= 8; chat++) {
+            users.recordStart(chat, chat * 100);
+        }
+        // самый старый снова нажал /start — теперь вытесняется следующий
+        users.recordStart(1, 1000);
+        users.recordStart(9, 1100);
+        assertEquals(1000, users.lastStartAt(1));
+        assertEquals(UserRegistry.UNKNOWN, users.lastStartAt(2));
+    }
+}
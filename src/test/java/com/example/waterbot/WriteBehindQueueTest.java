@@ -0,0 +1,118 @@
+package com.example.waterbot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+
+    // таймер, до которого тесты на размер пакета не доживают
+    private static final long NEVER_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    private void record(List<Integer> batch) {
+        batches.add(new ArrayList<>(batch));
+    }
+
+    @Test
+    void flushesFullBatchWithoutWaitingForTimer() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        try (WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", batch -> {
+            record(batch);
+            flushed.countDown();
+        }, 100, 3, NEVER_MS)) {
+            queue.add(1);
+            queue.add(2);
+            queue.add(3);
+            assertTrue(flushed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(List.of(1, 2, 3)), batches);
+        }
+    }
+
+    @Test
+    void flushesPartialBatchByTimer() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", batch -> {
+            record(batch);
+            flushed.countDown();
+        }, 100, 100, 50);
+        queue.add(1);
+        queue.add(2);
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        queue.close();
+        assertEquals(List.of(List.of(1, 2)), batches);
+        // счётчик растёт после возврата из sink — смотрим его после close()
+        assertEquals(2, queue.written());
+    }
+
+    @Test
+    void closeWritesEverythingQueued() {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", this::record, 100, 4, NEVER_MS);
+        for (int i = 0; i < 10; i++) {
+            queue.add(i);
+        }
+        queue.close();
+        assertEquals(10, queue.written());
+        assertEquals(10, batches.stream().mapToInt(List::size).sum());
+        // порядок записей сохраняется
+        assertEquals(List.of(0, 1, 2, 3), batches.get(0));
+    }
+
+    @Test
+    void dropsWhenFullInsteadOfBlocking() throws InterruptedException {
+        CountDownLatch inSink = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", batch -> {
+            inSink.countDown();
+            release.await();
+            record(batch);
+        }, 2, 1, NEVER_MS);
+        queue.add(1);
+        // поток записи занят первой записью, в очереди место на две
+        assertTrue(inSink.await(5, TimeUnit.SECONDS));
+        queue.add(2);
+        queue.add(3);
+        queue.add(4);
+        assertEquals(1, queue.dropped());
+        assertEquals(2, queue.depth());
+
+        release.countDown();
+        queue.close();
+        assertEquals(3, queue.written());
+        assertEquals(List.of(List.of(1), List.of(2), List.of(3)), batches);
+    }
+
+    @Test
+    void rejectsWritesAfterClose() {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", this::record, 100, 10, NEVER_MS);
+        queue.close();
+        queue.add(1);
+        assertEquals(1, queue.dropped());
+        assertEquals(0, queue.depth());
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void failedBatchIsCountedAndQueueKeepsGoing() {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("wb-test", batch -> {
+            if (batch.contains(1)) {
+                throw new IllegalStateException("disk full");
+            }
+            record(batch);
+        }, 100, 1, NEVER_MS);
+        queue.add(1);
+        queue.add(2);
+        queue.close();
+        assertEquals(1, queue.failed());
+        assertEquals(1, queue.written());
+        assertEquals(List.of(List.of(2)), batches);
+    }
+}